@@ -0,0 +1,58 @@
+package omics.gui.task;
+
+import omics.util.protein.database.FastaSequence;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the parallel length histogram and the per-length loop on a real proteome, set by the
+ * <code>omics.bench.fasta</code> system property, passed to the forked JVM with <code>-jvmArgsAppend</code>.
+ *
+ * @version 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LengthHistogramBenchmark
+{
+    @Param({"false", "true"})
+    public boolean unspecific;
+
+    @Param({"0"})
+    public int nrThread;
+
+    private FastaSequence sequence;
+
+    @Setup
+    public void setup()
+    {
+        String fasta = System.getProperty("omics.bench.fasta");
+        if (fasta == null)
+            throw new IllegalStateException("Set omics.bench.fasta");
+        sequence = new FastaSequence(fasta);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        sequence.clear();
+    }
+
+    @Benchmark
+    public int[] parallel() throws IOException
+    {
+        return nrThread > 0 ? LengthHistogram.compute(sequence, unspecific, nrThread)
+                : LengthHistogram.compute(sequence, unspecific);
+    }
+
+    @Benchmark
+    public int[] sequential() throws IOException
+    {
+        return LengthHistogram.computeSequential(sequence, unspecific);
+    }
+}
@@ -0,0 +1,61 @@
+package omics.gui.task;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall time of a search with the spectra sliced in file order and ordered by precursor mass. The search parameter
+ * and MS files are set by the <code>omics.bench.parameter</code> and <code>omics.bench.ms</code> (comma separated)
+ * system properties, passed to the forked JVM with <code>-jvmArgsAppend</code>. Run with <code>-prof perfnorm</code> on
+ * Linux to compare the cache misses of the two orders.
+ *
+ * @version 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12G")
+public class MassOrderBenchmark
+{
+    @Param({"false", "true"})
+    public boolean massOrder;
+
+    @Param({"-1"})
+    public int taskUnit;
+
+    private String parameterFile;
+    private String[] msFiles;
+
+    @Setup
+    public void setup()
+    {
+        parameterFile = System.getProperty("omics.bench.parameter");
+        String ms = System.getProperty("omics.bench.ms");
+        if (parameterFile == null || ms == null)
+            throw new IllegalStateException("Set omics.bench.parameter and omics.bench.ms");
+        msFiles = ms.split(",");
+    }
+
+    @Benchmark
+    public Object search() throws Exception
+    {
+        FXSearchTask task = new FXSearchTask(parameterFile, taskUnit, 0, Arrays.asList(msFiles));
+        task.setMassOrder(massOrder);
+        task.setReporter(new TaskReporter()
+        {
+            @Override
+            public void onTitle(String title) { }
+
+            @Override
+            public void onMessage(String message) { }
+
+            @Override
+            public void onProgress(double progress) { }
+        });
+        return task.runHeadless();
+    }
+}
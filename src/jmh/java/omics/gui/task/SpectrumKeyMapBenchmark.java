@@ -0,0 +1,75 @@
+package omics.gui.task;
+
+import com.google.common.collect.ArrayListMultimap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grouping of the PSMs of an export by spectrum, with file-scan key strings in a multimap as the export did before,
+ * and with packed keys in a {@link SpectrumKeyMap}. The PSMs are spread over a few files, with several PSMs of each
+ * spectrum. Run with <code>-prof gc</code> to compare the allocation.
+ *
+ * @version 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8G")
+public class SpectrumKeyMapBenchmark
+{
+    @Param({"5000000"})
+    public int psmCount;
+
+    @Param({"8"})
+    public int fileCount;
+
+    @Param({"3"})
+    public int psmPerSpectrum;
+
+    private String[] fileIds;
+    private int[] files;
+    private int[] scans;
+    private Object[] psms;
+
+    @Setup
+    public void setup()
+    {
+        fileIds = new String[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            fileIds[i] = "20151205_HEK293_" + i;
+        }
+        files = new int[psmCount];
+        scans = new int[psmCount];
+        psms = new Object[psmCount];
+        int spectrumCount = psmCount / psmPerSpectrum;
+        for (int i = 0; i < psmCount; i++) {
+            int spectrum = i % spectrumCount;
+            files[i] = spectrum % fileCount;
+            scans[i] = spectrum / fileCount + 1;
+            psms[i] = new Object();
+        }
+    }
+
+    @Benchmark
+    public int stringKey()
+    {
+        ArrayListMultimap<String, Object> psmMap = ArrayListMultimap.create();
+        for (int i = 0; i < psmCount; i++) {
+            psmMap.put(fileIds[files[i]] + "_" + scans[i], psms[i]);
+        }
+        return psmMap.keySet().size();
+    }
+
+    @Benchmark
+    public int packedKey()
+    {
+        SpectrumKeyMap<Object> psmMap = new SpectrumKeyMap<>();
+        for (int i = 0; i < psmCount; i++) {
+            psmMap.add(SpectrumKeyMap.scanKey(files[i], scans[i]), psms[i]);
+        }
+        return psmMap.size();
+    }
+}
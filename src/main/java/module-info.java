@@ -1,6 +1,8 @@
 module omics.gui {
     requires omics.pdk;
     requires logback.core;
+    requires java.management;
+    requires java.xml;
 
     requires javafx.controls;
     requires javafx.graphics;
@@ -9,6 +11,7 @@ module omics.gui {
     requires org.controlsfx.controls;
 
     exports omics.gui.psm;
+    exports omics.gui.task;
 
     opens omics.gui to javafx.fxml, javafx.graphics;
     opens omics.gui.controller to javafx.fxml;
@@ -0,0 +1,376 @@
+package omics.gui;
+
+import omics.gui.task.ExportResultTask;
+import omics.gui.task.FXSearchTask;
+import omics.gui.task.ProgressBus;
+import omics.gui.task.ReportingTask;
+import omics.gui.task.SearchChunk;
+import omics.gui.task.SweepSearchTask;
+import omics.gui.task.TaskReporter;
+import omics.util.protein.database.util.DoShuffleDB;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Run search and export without the JavaFX toolkit, for compute nodes without display.
+ * <pre>
+ * search -p parameter.pcf [-t threads] [-u taskUnit] [--interleave] [--prefetch n]
+ *        [--checkpoint] [--workers n] [--worker-heap 8G] [--mass-order] [--concurrent-files n] [--binary-result]
+ *        [--spectrum-cache] [--admission] ms files...
+ * sweep -p a.pcf -p b.pcf... [-t threads] [-u taskUnit] [-o outDir] [--fdr 0.01] ms files...
+ * export -o result.xlsx [--fdr 0.01] [--evalue 0.01] [--rank-score 20] [--top-n 1] [--only-delta] [--decoy-tag tag]
+ *        [--fasta db.fasta] [-t threads] [--prefilter] [--temp-dir dir] result files...
+ * </pre>
+ * With <code>--prefilter</code>, export drops the mzid PSMs failing the score thresholds into a copy in
+ * <code>--temp-dir</code>, next to the output by default, the copy is only parsed when the thresholds drop most PSMs.
+ * <p>
+ * Progress lines start with <code>[progress]</code>, and the last line is a JSON object with the elapsed time of each
+ * stage, so that it can be parsed by scripts.
+ *
+ * @version 1.0.0
+ */
+public class HeadlessLauncher
+{
+    private static final PrintStream out = System.out;
+
+    public static void main(String[] args)
+    {
+        if (args.length == 0) {
+            usage();
+            System.exit(2);
+        }
+
+        String command = args[0];
+        Arguments arguments = new Arguments(args);
+        ReportingTask<?> task;
+        try {
+            if (command.equals("search")) {
+                task = createSearchTask(arguments);
+            } else if (command.equals("sweep")) {
+                task = createSweepTask(arguments);
+            } else if (command.equals("export")) {
+                task = createExportTask(arguments);
+            } else {
+                usage();
+                System.exit(2);
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+
+        StdoutReporter reporter = new StdoutReporter();
+        task.setReporter(reporter);
+        long startTime = System.nanoTime();
+        String status = "ok";
+        String error = null;
+        try {
+            task.runHeadless();
+        } catch (Throwable e) {
+            status = "failed";
+            error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            e.printStackTrace();
+        }
+        reporter.endStage();
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"command\":\"").append(command).append("\"");
+        json.append(",\"status\":\"").append(status).append("\"");
+        if (error != null)
+            json.append(",\"error\":\"").append(escape(error)).append("\"");
+        json.append(",\"elapsedMs\":").append((System.nanoTime() - startTime) / 1_000_000);
+        json.append(",\"stages\":[");
+        for (int i = 0; i < reporter.stageList.size(); i++) {
+            Stage stage = reporter.stageList.get(i);
+            if (i > 0)
+                json.append(",");
+            json.append("{\"name\":\"").append(escape(stage.name)).append("\",\"ms\":").append(stage.millis).append("}");
+        }
+        json.append("]");
+        if (task instanceof FXSearchTask) {
+            List<SearchChunk> chunkList = ((FXSearchTask) task).getChunkList();
+            json.append(",\"lastChunks\":\"").append(escape(SearchChunk.summarize(chunkList))).append("\"");
+        }
+        json.append("}");
+        out.println(json);
+        out.flush();
+        System.exit(status.equals("ok") ? 0 : 1);
+    }
+
+    private static FXSearchTask createSearchTask(Arguments arguments)
+    {
+        String parameterFile = arguments.required("-p");
+        int nrThread = arguments.intValue("-t", 0);
+        int taskUnit = arguments.intValue("-u", -1);
+        List<String> msFiles = arguments.files();
+        if (msFiles.isEmpty())
+            throw new IllegalArgumentException("No MS file");
+
+        FXSearchTask task = new FXSearchTask(parameterFile, taskUnit, nrThread, msFiles);
+        task.setInterleaveDecoy(arguments.flag("--interleave"));
+        task.setCheckpoint(arguments.flag("--checkpoint"));
+        task.setMassOrder(arguments.flag("--mass-order"));
+        task.setConcurrentFiles(arguments.intValue("--concurrent-files", 1));
+        task.setBinaryResult(arguments.flag("--binary-result"));
+        task.setSpectrumCache(arguments.flag("--spectrum-cache"));
+        task.setMemoryAdmission(arguments.flag("--admission"));
+        task.setPrefetchDepth(arguments.intValue("--prefetch", 0));
+        task.setWorkerCount(arguments.intValue("--workers", 0));
+        task.setWorkerHeap(arguments.value("--worker-heap", null));
+        return task;
+    }
+
+    private static SweepSearchTask createSweepTask(Arguments arguments)
+    {
+        List<String> parameterFiles = arguments.values("-p");
+        if (parameterFiles.isEmpty())
+            throw new IllegalArgumentException("Missing option -p");
+        int nrThread = arguments.intValue("-t", 0);
+        int taskUnit = arguments.intValue("-u", -1);
+        List<String> msFiles = arguments.files();
+        if (msFiles.isEmpty())
+            throw new IllegalArgumentException("No MS file");
+
+        SweepSearchTask task = new SweepSearchTask(parameterFiles, taskUnit, nrThread, msFiles);
+        String outDir = arguments.value("-o", null);
+        if (outDir != null)
+            task.setOutputDirectory(Paths.get(outDir));
+        task.setFdr(arguments.doubleValue("--fdr", 0.01));
+        return task;
+    }
+
+    private static ExportResultTask createExportTask(Arguments arguments)
+    {
+        String targetFile = arguments.required("-o");
+        double fdr = arguments.doubleValue("--fdr", 0.01);
+        double maxEValue = arguments.doubleValue("--evalue", 0.01);
+        int minRankScore = arguments.intValue("--rank-score", 20);
+        int topN = arguments.intValue("--top-n", 1);
+        boolean onlyDelta = arguments.flag("--only-delta");
+        String decoyTag = arguments.value("--decoy-tag", DoShuffleDB.DECOY_PROTEIN_PREFIX);
+        String fasta = arguments.value("--fasta", null);
+
+        List<File> fileList = new ArrayList<>();
+        for (String file : arguments.files()) {
+            fileList.add(new File(file));
+        }
+        if (fileList.isEmpty())
+            throw new IllegalArgumentException("No identification file");
+
+        ExportResultTask task = new ExportResultTask(fdr, maxEValue, minRankScore, topN, onlyDelta, fileList,
+                targetFile, decoyTag);
+        if (fasta != null) {
+            task.setRemoveSameset(true);
+            task.setFasta(fasta);
+        }
+        task.setThreadCount(arguments.intValue("-t", 0));
+        task.setPrefilter(arguments.flag("--prefilter"));
+        String tempDir = arguments.value("--temp-dir", null);
+        if (tempDir != null)
+            task.setTempDirectory(Paths.get(tempDir));
+        return task;
+    }
+
+    private static void usage()
+    {
+        System.err.println("Usage:");
+        System.err.println("  search -p parameter.pcf [-t threads] [-u taskUnit] [--interleave] "
+                + "[--prefetch n] [--checkpoint] [--workers n] [--worker-heap 8G] [--mass-order] "
+                + "[--concurrent-files n] [--binary-result] [--spectrum-cache] [--admission] ms files...");
+        System.err.println("  sweep -p a.pcf -p b.pcf... [-t threads] [-u taskUnit] [-o outDir] [--fdr 0.01] ms files...");
+        System.err.println("  export -o result.xlsx [--fdr 0.01] [--evalue 0.01] [--rank-score 20] [--top-n 1] "
+                + "[--only-delta] [--decoy-tag tag] [--fasta db.fasta] [-t threads] [--prefilter] "
+                + "[--temp-dir dir] result files...");
+    }
+
+    private static String escape(String value)
+    {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                builder.append('\\').append(c);
+            else if (c < 0x20)
+                builder.append(String.format("\\u%04x", (int) c));
+            else
+                builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static class Stage
+    {
+        private final String name;
+        private final long millis;
+
+        Stage(String name, long millis)
+        {
+            this.name = name;
+            this.millis = millis;
+        }
+    }
+
+    /**
+     * Print the updates to stdout, each title starts a new stage.
+     */
+    private static class StdoutReporter implements TaskReporter
+    {
+        private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+        private final List<Stage> stageList = new ArrayList<>();
+        private String stageName;
+        private long stageStart;
+        private long lastPrint;
+        private double lastProgress = -1;
+        private long etaMillis = -1;
+
+        @Override
+        public synchronized void onTitle(String title)
+        {
+            if (title == null || title.equals(stageName))
+                return;
+            endStage();
+            stageName = title;
+            stageStart = System.nanoTime();
+            lastProgress = -1;
+            etaMillis = -1;
+            out.println("[stage] " + title);
+        }
+
+        @Override
+        public synchronized void onMessage(String message)
+        {
+            if (message != null && !message.isEmpty())
+                out.println("[message] " + message);
+        }
+
+        @Override
+        public synchronized void onProgress(double progress)
+        {
+            long now = System.nanoTime();
+            if (progress < 1.0 && progress - lastProgress < 0.01 && now - lastPrint < PROGRESS_INTERVAL_NANOS)
+                return;
+            lastProgress = progress;
+            lastPrint = now;
+            if (progress < 0)
+                out.println("[progress] -");
+            else if (etaMillis < 0)
+                out.println(String.format(Locale.US, "[progress] %.1f%%", progress * 100));
+            else
+                out.println(String.format(Locale.US, "[progress] %.1f%% eta %s", progress * 100,
+                        ProgressBus.formatDuration(etaMillis)));
+        }
+
+        @Override
+        public synchronized void onEstimate(double throughput, long etaMillis)
+        {
+            this.etaMillis = etaMillis;
+        }
+
+        synchronized void endStage()
+        {
+            if (stageName != null)
+                stageList.add(new Stage(stageName, (System.nanoTime() - stageStart) / 1_000_000));
+            stageName = null;
+        }
+    }
+
+    /**
+     * Options and file arguments following the command.
+     */
+    private static class Arguments
+    {
+        private final List<String> optionList = new ArrayList<>();
+        private final List<String> fileList = new ArrayList<>();
+
+        Arguments(String[] args)
+        {
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("-")) {
+                    optionList.add(arg);
+                    if (!isFlag(arg) && i + 1 < args.length)
+                        optionList.add(args[++i]);
+                } else {
+                    fileList.add(arg);
+                }
+            }
+        }
+
+        private static boolean isFlag(String arg)
+        {
+            return arg.equals("--interleave") || arg.equals("--checkpoint")
+                    || arg.equals("--mass-order") || arg.equals("--binary-result") || arg.equals("--spectrum-cache")
+                    || arg.equals("--admission") || arg.equals("--only-delta") || arg.equals("--prefilter");
+        }
+
+        boolean flag(String name)
+        {
+            return optionList.contains(name);
+        }
+
+        String value(String name, String defaultValue)
+        {
+            for (int i = 0; i < optionList.size() - 1; i++) {
+                if (optionList.get(i).equals(name))
+                    return optionList.get(i + 1);
+            }
+            return defaultValue;
+        }
+
+        List<String> values(String name)
+        {
+            List<String> valueList = new ArrayList<>();
+            for (int i = 0; i < optionList.size() - 1; i++) {
+                if (optionList.get(i).equals(name))
+                    valueList.add(optionList.get(++i));
+            }
+            return valueList;
+        }
+
+        String required(String name)
+        {
+            String value = value(name, null);
+            if (value == null)
+                throw new IllegalArgumentException("Missing option " + name);
+            return value;
+        }
+
+        int intValue(String name, int defaultValue)
+        {
+            String value = value(name, null);
+            if (value == null)
+                return defaultValue;
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value of " + name + ": " + value);
+            }
+        }
+
+        double doubleValue(String name, double defaultValue)
+        {
+            String value = value(name, null);
+            if (value == null)
+                return defaultValue;
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value of " + name + ": " + value);
+            }
+        }
+
+        List<String> files()
+        {
+            return fileList;
+        }
+    }
+}
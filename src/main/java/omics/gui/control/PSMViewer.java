@@ -15,6 +15,8 @@ import omics.gui.psm.IonAnnotator;
 import omics.gui.psm.PSMViewSettings;
 import omics.gui.psm.PeptideSpectrumChart;
 import omics.gui.psm.util.NodeUtils;
+import omics.gui.task.BinaryResult;
+import omics.gui.task.ReadBinaryResultTask;
 import omics.gui.util.ExceptionAlert;
 import omics.gui.util.IdentFileUIUtils;
 import omics.msdk.io.MsDataAccessor;
@@ -330,8 +332,13 @@ public class PSMViewer extends BorderPane implements ToolNode, ShowAlert
         File file = psmFileChooser.showOpenDialog(getScene().getWindow());
         if (file == null)
             return;
-        IdentResultReadingTask task = new IdentResultReadingTask(file.toPath(), null);
-        Task<IdentResult> proTask = NodeUtils.createTask(task);
+        Task<IdentResult> proTask;
+        if (BinaryResult.isBinary(file.toPath())) {
+            proTask = new ReadBinaryResultTask(file.toPath());
+        } else {
+            IdentResultReadingTask task = new IdentResultReadingTask(file.toPath(), null);
+            proTask = NodeUtils.createTask(task);
+        }
         if (progressView != null) {
             progressView.getTasks().add(proTask);
         }
@@ -5,7 +5,9 @@ import javafx.event.ActionEvent;
 import javafx.scene.control.*;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import omics.gui.task.DecoyGenerator;
 import omics.util.io.FilenameUtils;
+import omics.util.protein.database.util.DoShuffleDB;
 
 import java.io.File;
 
@@ -25,7 +27,7 @@ public class FastaDecoyController extends OmicsController
     private File inputFile;
     private File outputFile;
     private Stage stage;
-    private Task task;
+    private Task<Void> task;
 
     public void setStage(Stage stage)
     {
@@ -46,33 +48,46 @@ public class FastaDecoyController extends OmicsController
 
     public void startTask(ActionEvent event) throws Exception
     {
-//        DecoyType taskType;
-//        if (button_random.isSelected()) {
-//            taskType = DecoyType.RANDOM;
-//        } else
-//            taskType = DecoyType.REVERSE;
+        if (inputFile == null) {
+            label_status.setText("Please choose the input fasta file");
+            return;
+        }
+
+        DecoyGenerator.Type taskType;
+        if (button_random.isSelected()) {
+            taskType = DecoyGenerator.Type.SHUFFLE;
+        } else
+            taskType = DecoyGenerator.Type.REVERSE;
 
         final boolean concated = checkBox_concated.isSelected();
+        final File input = inputFile;
+        final File output = outputFile;
 
-//        task = new Task()
-//        {
-//            @Override
-//            protected Void call() throws Exception
-//            {
-//                DoShuffleDB shuffleDB = new DoShuffleDB(inputFile, outputFile, taskType, concated, ProteinDB.REVERSE);
-//                shuffleDB.progressProperty().addListener(evt -> updateProgress((Double) evt.getNewValue(), 1.0));
-//                shuffleDB.messageProperty().addListener(evt -> updateMessage((String) evt.getNewValue()));
-//                shuffleDB.exceptionProperty().addListener(evt -> setException((Throwable) evt.getNewValue()));
-//
-//                shuffleDB.start();
-//                return null;
-//            }
-//        };
+        task = new Task<Void>()
+        {
+            @Override
+            protected Void call() throws Exception
+            {
+                updateMessage("Generate decoy database");
+                DecoyGenerator generator = new DecoyGenerator(input.toPath(), output.toPath(), taskType,
+                        DoShuffleDB.DECOY_PROTEIN_PREFIX);
+                generator.setConcatenate(concated);
+                generator.setProgressListener(progress -> updateProgress(progress, 1.0));
+                generator.go();
+                updateMessage("Finished: " + output.getName());
+                return null;
+            }
+        };
+        task.setOnFailed(evt -> {
+            label_status.textProperty().unbind();
+            label_status.setText("Failed: " + task.getException().getMessage());
+        });
 
         progress_bar.progressProperty().bind(task.progressProperty());
         label_status.textProperty().bind(task.messageProperty());
 
         Thread thread = new Thread(task);
+        thread.setDaemon(true);
         thread.start();
     }
 
@@ -16,7 +16,7 @@ import omics.gui.ShowAlert;
 import omics.gui.TaskType;
 import omics.gui.control.*;
 import omics.gui.psm.util.NodeUtils;
-import omics.pdk.ident.IGD;
+import omics.gui.task.FXSearchTask;
 import omics.pdk.ident.SearchParameters;
 import omics.util.utils.SystemUtils;
 import org.controlsfx.control.PopOver;
@@ -50,6 +50,8 @@ public class MainController implements ShowAlert
     @FXML
     private ListView<File> msFileListNode;
     @FXML
+    private Spinner<Integer> concurrentFileNode;
+    @FXML
     private Spinner<Integer> threadNode;
     @FXML
     private Button startButton;
@@ -142,6 +144,7 @@ public class MainController implements ShowAlert
         if (currentProcessor < 1)
             currentProcessor = 1;
         threadNode.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(1, processors, currentProcessor));
+        concurrentFileNode.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(1, 4, 1));
 
         startButton.setGraphic(TaskType.RUN.getIcon(Color.GREEN));
         startButton.setOnAction(event -> startSearch());
@@ -213,14 +216,25 @@ public class MainController implements ShowAlert
             fileList.add(item.getAbsolutePath());
         }
 
-        IGD igd = new IGD(parameterFile, 666, threadCount, fileList);
-        searchTask = NodeUtils.createTask(igd);
+        FXSearchTask fxSearchTask = new FXSearchTask(parameterFile, 666, threadCount, fileList);
+        // each file searched concurrently shows its own progress
+        fxSearchTask.setConcurrentFiles(concurrentFileNode.getValue());
+        fxSearchTask.setFileTaskListener(fileTask -> taskProgressNode.getTasks().add(fileTask));
+        searchTask = fxSearchTask;
         taskProgressNode.getTasks().add(searchTask);
 
         searchTask.setOnSucceeded(event -> {
             startButton.setDisable(false);
             cancelButton.setDisable(true);
         });
+        searchTask.setOnFailed(event -> {
+            startButton.setDisable(false);
+            cancelButton.setDisable(true);
+        });
+        searchTask.setOnCancelled(event -> {
+            startButton.setDisable(false);
+            cancelButton.setDisable(true);
+        });
 
         Thread thread = new Thread(searchTask);
         thread.setDaemon(true);
@@ -232,6 +246,7 @@ public class MainController implements ShowAlert
     private void doCancel()
     {
         if (searchTask != null && searchTask.isRunning()) {
+            cancelButton.setDisable(true);
             searchTask.cancel(true);
         }
 
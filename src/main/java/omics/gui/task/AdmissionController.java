@@ -0,0 +1,262 @@
+package omics.gui.task;
+
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Admission control of search chunks by estimated memory.
+ * <p>
+ * The memory of a chunk is estimated as its {@link SpectrumCost} times the bytes per unit cost, which is calibrated by
+ * the peak heap usage of a small sample search. A chunk holds permits of its estimated memory from the start of its
+ * search until its matches are converted or spilled, so the chunks running and the results waiting for conversion
+ * stay under the heap budget, chunks larger than the budget are split. When a chunk runs out of memory the estimate
+ * is doubled, so that fewer chunks run together.
+ *
+ * @version 1.0.0
+ */
+public class AdmissionController
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    /**
+     * number of spectra searched to calibrate the memory estimate.
+     */
+    public static final int CALIBRATION_SIZE = 50;
+    private static final int PERMIT_BYTES = 1024;
+
+    private final long heapBudget;
+    private final int nrThread;
+    private final int totalPermits;
+    private final Semaphore permits;
+    private final AtomicInteger runningCount = new AtomicInteger();
+    private final Consumer<String> decisionListener;
+    private volatile double bytesPerCost = Double.NaN;
+
+    /**
+     * Constructor.
+     *
+     * @param heapBudget       max heap bytes of chunks running together
+     * @param nrThread         number of search threads
+     * @param decisionListener listener of the admission decisions
+     */
+    public AdmissionController(long heapBudget, int nrThread, Consumer<String> decisionListener)
+    {
+        this.heapBudget = heapBudget;
+        this.nrThread = nrThread;
+        this.totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, heapBudget / PERMIT_BYTES));
+        this.permits = new Semaphore(totalPermits, true);
+        this.decisionListener = decisionListener;
+    }
+
+    /**
+     * @return the default heap budget, three quarters of the heap not used yet.
+     */
+    public static long defaultHeapBudget()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return (runtime.maxMemory() - used) / 4 * 3;
+    }
+
+    /**
+     * @return true if the bytes per unit cost is calibrated
+     */
+    public boolean isCalibrated()
+    {
+        return !Double.isNaN(bytesPerCost);
+    }
+
+    /**
+     * Calibrate the bytes per unit cost by running a sample search on current thread. The peak usage of the heap
+     * pools while searching is measured over the used heap after GC, so the garbage allocated by the search counts
+     * as well as its result.
+     *
+     * @param sampleCost cost of the sample
+     * @param sample     the sample search
+     * @return result of the sample, so that it is not searched again
+     */
+    public <T> T calibrate(double sampleCost, Callable<T> sample) throws Exception
+    {
+        long baseline = usedHeapAfterGc();
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                pools.add(pool);
+            }
+        }
+        T result = sample.call();
+        // the pools peak at different times, their sum is an upper bound of the peak heap
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+
+        long bytes = Math.max(peak - baseline, PERMIT_BYTES);
+        this.bytesPerCost = bytes / Math.max(sampleCost, 1.0);
+        logger.info("Memory calibration: {} bytes at peak for sample cost {}", bytes, sampleCost);
+        return result;
+    }
+
+    /**
+     * @param cost cost of a chunk
+     * @return estimated heap bytes of the chunk
+     */
+    public long estimate(double cost)
+    {
+        if (!isCalibrated())
+            return 0;
+        return (long) (cost * bytesPerCost);
+    }
+
+    /**
+     * Split the chunks estimated over the heap budget, and report the number of chunks able to run together.
+     *
+     * @param chunks {@link SearchChunk}s
+     * @param costs  cost of each spectrum
+     * @return chunks under the budget
+     */
+    public List<SearchChunk> admit(List<SearchChunk> chunks, double[] costs)
+    {
+        if (!isCalibrated())
+            return chunks;
+
+        double maxCost = heapBudget / bytesPerCost;
+        List<SearchChunk> admitted = new ArrayList<>(chunks.size());
+        int splitCount = 0;
+        long maxEstimate = 0;
+        for (SearchChunk chunk : chunks) {
+            if (chunk.getCost() <= maxCost || chunk.size() == 1) {
+                admitted.add(chunk);
+                maxEstimate = Math.max(maxEstimate, estimate(chunk.getCost()));
+                continue;
+            }
+            splitCount++;
+            int start = chunk.getStartIndex();
+            double cost = 0;
+            for (int i = chunk.getStartIndex(); i < chunk.getEndIndex(); i++) {
+                if (i > start && cost + costs[i] > maxCost) {
+                    admitted.add(new SearchChunk(start, i, cost));
+                    start = i;
+                    cost = 0;
+                }
+                cost += costs[i];
+            }
+            admitted.add(new SearchChunk(start, chunk.getEndIndex(), cost));
+            maxEstimate = Math.max(maxEstimate, Math.min(estimate(maxCost), heapBudget));
+        }
+
+        if (splitCount > 0)
+            decide(String.format("Memory: split %d chunks over the budget %s into smaller chunks", splitCount,
+                    formatBytes(heapBudget)));
+        int parallel = maxEstimate <= 0 ? nrThread : (int) Math.max(1, Math.min(nrThread, heapBudget / maxEstimate));
+        if (parallel < nrThread)
+            decide(String.format("Memory: up to %d of %d threads run together (%s per chunk, budget %s)", parallel,
+                    nrThread, formatBytes(maxEstimate), formatBytes(heapBudget)));
+        return admitted;
+    }
+
+    /**
+     * Run a chunk once the memory it needs is available. The permits of the chunk are added to the held permits when
+     * it succeeds, and are only released by {@link #release(Collection)} once its result is converted or spilled.
+     * <p>
+     * If results waiting for conversion hold the permits and no chunk is running, the chunk runs over the budget,
+     * otherwise it would wait forever.
+     *
+     * @param cost     cost of the chunk
+     * @param callable the chunk
+     * @param held     permits held by the results, the permits of this chunk are added to it
+     * @return result of the chunk
+     */
+    public <T> T run(double cost, Callable<T> callable, Collection<Integer> held) throws Exception
+    {
+        if (!isCalibrated())
+            return callable.call();
+
+        int n = (int) Math.min(totalPermits, Math.max(1, estimate(cost) / PERMIT_BYTES));
+        boolean overBudget = false;
+        while (!permits.tryAcquire(n, 1, TimeUnit.SECONDS)) {
+            // one chunk at a time runs over the budget
+            if (runningCount.compareAndSet(0, 1)) {
+                decide("Memory: results waiting for conversion use the budget, run a chunk over the budget");
+                overBudget = true;
+                n = 0;
+                break;
+            }
+        }
+        if (!overBudget)
+            runningCount.incrementAndGet();
+        boolean succeeded = false;
+        try {
+            T result = callable.call();
+            succeeded = true;
+            return result;
+        } finally {
+            runningCount.decrementAndGet();
+            if (succeeded)
+                held.add(n);
+            else
+                permits.release(n);
+        }
+    }
+
+    /**
+     * Release the permits held by results converted or spilled.
+     *
+     * @param held permits added by {@link #run(double, Callable, Collection)}, they are removed
+     */
+    public void release(Collection<Integer> held)
+    {
+        int n = 0;
+        for (Iterator<Integer> it = held.iterator(); it.hasNext(); ) {
+            n += it.next();
+            it.remove();
+        }
+        permits.release(n);
+    }
+
+    /**
+     * Double the bytes per unit cost after a chunk ran out of memory.
+     *
+     * @param chunkSize number of spectra of the chunk
+     */
+    public void onOutOfMemory(int chunkSize)
+    {
+        synchronized (this) {
+            bytesPerCost = isCalibrated() ? bytesPerCost * 2 : (double) heapBudget / nrThread;
+        }
+        decide(String.format("Memory: chunk of %d spectra ran out of memory, retry in halves with fewer chunks together",
+                chunkSize));
+    }
+
+    private void decide(String decision)
+    {
+        logger.info(decision);
+        decisionListener.accept(decision);
+    }
+
+    private static long usedHeapAfterGc()
+    {
+        ManagementFactory.getMemoryMXBean().gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    static String formatBytes(long bytes)
+    {
+        if (bytes >= 1L << 30)
+            return String.format("%.1f GB", bytes / (double) (1L << 30));
+        return String.format("%.1f MB", bytes / (double) (1L << 20));
+    }
+}
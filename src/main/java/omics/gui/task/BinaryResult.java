@@ -0,0 +1,751 @@
+package omics.gui.task;
+
+import omics.pdk.IdentResult;
+import omics.pdk.ident.SearchParameters;
+import omics.pdk.ident.model.*;
+import omics.util.MetaKey;
+import omics.util.ms.MsDataId;
+import omics.util.ms.ScanNumberDiscrete;
+import omics.util.protein.Peptide;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Columnar binary format of PSMs, much faster to read than mzIdentML.
+ * <p>
+ * Each attribute of the PSMs is stored as a primitive column, peptides, proteins, titles, meta keys and meta values
+ * are stored as indexes into a string dictionary, so that repeated strings are stored once. Scores are stored as
+ * double columns, with NaN for missing values. The columns are memory mapped when the file is opened, so that the PSMs
+ * can be filtered by {@link #toIdentResult(IntPredicate)} before any of them is created. The text of the search
+ * parameter file is stored with the PSMs, mzIdentML remains the export format for other tools.
+ * <p>
+ * Only the protein accessions of a peptide are stored, the positions of the peptide in the proteins and the flanking
+ * residues are not, read the mzIdentML written with it when they are needed.
+ *
+ * @version 1.0.0
+ */
+public class BinaryResult implements Closeable
+{
+    /**
+     * name of the format, shown in file choosers.
+     */
+    public static final String NAME = "Omics Binary Result";
+    /**
+     * file extension of the format, without the dot.
+     */
+    public static final String EXTENSION = "omr";
+
+    private static final int MAGIC = 0x4F4D4252;
+    private static final int VERSION = 1;
+
+    private static final int DICT_OFFSETS = 1;
+    private static final int DICT_BYTES = 2;
+    private static final int PARAMETERS = 3;
+    private static final int MS_DATA = 4;
+    private static final int FILE = 5;
+    private static final int INDEX = 6;
+    private static final int TITLE = 7;
+    private static final int SCAN = 8;
+    private static final int CHARGE = 9;
+    private static final int MZ = 10;
+    private static final int RANK = 11;
+    private static final int PEPTIDE = 12;
+    private static final int TARGET = 13;
+    private static final int PROTEIN_OFFSETS = 14;
+    private static final int PROTEINS = 15;
+    private static final int SCORE = 16;
+    private static final int META = 17;
+
+    private final FileChannel channel;
+    private final int size;
+    private final IntBuffer dictOffsets;
+    private final ByteBuffer dictBytes;
+    private final String[] strings;
+    private final String parameters;
+    private final IntBuffer msData;
+    private final IntBuffer fileColumn;
+    private final IntBuffer indexColumn;
+    private final IntBuffer titleColumn;
+    private final IntBuffer scanColumn;
+    private final IntBuffer chargeColumn;
+    private final DoubleBuffer mzColumn;
+    private final IntBuffer rankColumn;
+    private final IntBuffer peptideColumn;
+    private final ByteBuffer targetColumn;
+    private final IntBuffer proteinOffsets;
+    private final IntBuffer proteinColumn;
+    private final List<Score> scoreList = new ArrayList<>();
+    private final List<DoubleBuffer> scoreColumnList = new ArrayList<>();
+    private final List<String> metaKeyList = new ArrayList<>();
+    private final List<IntBuffer> metaColumnList = new ArrayList<>();
+
+    private BinaryResult(Path file) throws IOException
+    {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, 12);
+            if (header.getInt() != MAGIC)
+                throw new IOException(file + " is not an " + NAME + " file");
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported version " + version + " of " + file);
+            size = header.getInt();
+
+            long directoryOffset = read(channel.size() - 8, 8).getLong();
+            ByteBuffer count = read(directoryOffset, 4);
+            int sectionCount = count.getInt();
+            ByteBuffer directory = read(directoryOffset + 4, sectionCount * 24L);
+
+            Map<Integer, MappedByteBuffer> sectionMap = new HashMap<>();
+            List<Integer> scoreKeys = new ArrayList<>();
+            List<Integer> metaKeys = new ArrayList<>();
+            for (int i = 0; i < sectionCount; i++) {
+                int kind = directory.getInt();
+                int key = directory.getInt();
+                long offset = directory.getLong();
+                long length = directory.getLong();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                if (kind == SCORE) {
+                    scoreKeys.add(key);
+                    scoreColumnList.add(buffer.asDoubleBuffer());
+                } else if (kind == META) {
+                    metaKeys.add(key);
+                    metaColumnList.add(buffer.asIntBuffer());
+                } else {
+                    sectionMap.put(kind, buffer);
+                }
+            }
+
+            dictOffsets = section(sectionMap, DICT_OFFSETS).asIntBuffer();
+            dictBytes = section(sectionMap, DICT_BYTES);
+            strings = new String[dictOffsets.limit() - 1];
+            MappedByteBuffer parameterBuffer = sectionMap.get(PARAMETERS);
+            if (parameterBuffer != null) {
+                byte[] bytes = new byte[parameterBuffer.remaining()];
+                parameterBuffer.get(bytes);
+                parameters = new String(bytes, StandardCharsets.UTF_8);
+            } else {
+                parameters = null;
+            }
+            msData = section(sectionMap, MS_DATA).asIntBuffer();
+            fileColumn = section(sectionMap, FILE).asIntBuffer();
+            indexColumn = section(sectionMap, INDEX).asIntBuffer();
+            titleColumn = section(sectionMap, TITLE).asIntBuffer();
+            scanColumn = section(sectionMap, SCAN).asIntBuffer();
+            chargeColumn = section(sectionMap, CHARGE).asIntBuffer();
+            mzColumn = section(sectionMap, MZ).asDoubleBuffer();
+            rankColumn = section(sectionMap, RANK).asIntBuffer();
+            peptideColumn = section(sectionMap, PEPTIDE).asIntBuffer();
+            targetColumn = section(sectionMap, TARGET);
+            proteinOffsets = section(sectionMap, PROTEIN_OFFSETS).asIntBuffer();
+            proteinColumn = section(sectionMap, PROTEINS).asIntBuffer();
+            for (int key : scoreKeys) {
+                scoreList.add(Score.valueOf(getString(key)));
+            }
+            for (int key : metaKeys) {
+                metaKeyList.add(getString(key));
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer read(long position, long length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException();
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static MappedByteBuffer section(Map<Integer, MappedByteBuffer> sectionMap, int kind) throws IOException
+    {
+        MappedByteBuffer buffer = sectionMap.get(kind);
+        if (buffer == null)
+            throw new IOException("Section " + kind + " is missing");
+        return buffer;
+    }
+
+    /**
+     * Open a binary result file, the columns are memory mapped.
+     *
+     * @param file result file
+     * @return {@link BinaryResult}
+     */
+    public static BinaryResult open(Path file) throws IOException
+    {
+        return new BinaryResult(file);
+    }
+
+    /**
+     * Return true if the file starts with the magic number of this format.
+     *
+     * @param file file to check
+     * @return true if it is a binary result file.
+     */
+    public static boolean isBinary(Path file)
+    {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return the binary result path next to an output path, with the extension replaced.
+     *
+     * @param outPath output path, such as the mzIdentML file of a search pass
+     * @return path of the binary result
+     */
+    public static Path pathOf(Path outPath)
+    {
+        String name = outPath.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return outPath.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + "." + EXTENSION);
+    }
+
+    /**
+     * Write the PSMs of a result.
+     *
+     * @param result     {@link IdentResult} to write
+     * @param parameters text of the search parameter file, null if not known
+     * @param file       output file
+     */
+    public static void write(IdentResult result, String parameters, Path file) throws IOException
+    {
+        List<PeptideSpectrumMatch> psmList = result.getPSMList();
+        int size = psmList.size();
+        StringDictionary dictionary = new StringDictionary();
+
+        Map<MsDataId, Integer> msDataMap = new LinkedHashMap<>();
+        int[] files = new int[size];
+        int[] indexes = new int[size];
+        int[] titles = new int[size];
+        int[] scans = new int[size];
+        int[] charges = new int[size];
+        double[] mzs = new double[size];
+        int[] ranks = new int[size];
+        int[] peptides = new int[size];
+        byte[] targets = new byte[size];
+        int[] proteinOffsets = new int[size + 1];
+        IntList proteins = new IntList();
+        Map<Score, double[]> scoreMap = new LinkedHashMap<>();
+        Map<String, int[]> metaMap = new LinkedHashMap<>();
+
+        for (int i = 0; i < size; i++) {
+            PeptideSpectrumMatch psm = psmList.get(i);
+            MsDataId msDataId = psm.getMsDataId();
+            Integer msDataIndex = msDataMap.get(msDataId);
+            if (msDataIndex == null) {
+                msDataIndex = msDataMap.size();
+                msDataMap.put(msDataId, msDataIndex);
+            }
+            files[i] = msDataIndex;
+            indexes[i] = psm.getIdentifier().getIndex();
+            titles[i] = dictionary.id(psm.getTitle());
+            scans[i] = psm.getScanNumber() == null ? -1 : psm.getScanNumber().getValue();
+            charges[i] = psm.getPrecursorCharge();
+            mzs[i] = psm.getPrecursorMz();
+            ranks[i] = psm.getRank();
+            peptides[i] = dictionary.id(psm.getPeptide().toString());
+            targets[i] = (byte) (psm.isTarget() ? 1 : 0);
+
+            for (PeptideProteinMatch match : psm.getPeptideMatch().getPeptideProteinMatches()) {
+                proteins.add(dictionary.id(match.getProteinMatch().getAccession()));
+            }
+            proteinOffsets[i + 1] = proteins.size();
+
+            for (Score score : psm.getScoreList()) {
+                if (!psm.hasScore(score))
+                    continue;
+                double[] column = scoreMap.computeIfAbsent(score, key -> {
+                    double[] values = new double[size];
+                    Arrays.fill(values, Double.NaN);
+                    return values;
+                });
+                column[i] = ((Number) psm.getScore(score)).doubleValue();
+            }
+            for (MetaKey key : psm.getMetaKeyList()) {
+                Optional<?> value = psm.getMeta(key);
+                if (!value.isPresent())
+                    continue;
+                int[] column = metaMap.computeIfAbsent(key.getId(), id -> {
+                    int[] values = new int[size];
+                    Arrays.fill(values, -1);
+                    return values;
+                });
+                column[i] = dictionary.id(value.get().toString());
+            }
+        }
+
+        int[] msData = new int[msDataMap.size() * 2];
+        for (Map.Entry<MsDataId, Integer> entry : msDataMap.entrySet()) {
+            msData[entry.getValue() * 2] = dictionary.id(entry.getKey().getId());
+            msData[entry.getValue() * 2 + 1] = dictionary.id(entry.getKey().getName());
+        }
+        int[] scoreKeys = new int[scoreMap.size()];
+        int k = 0;
+        for (Score score : scoreMap.keySet()) {
+            scoreKeys[k++] = dictionary.id(score.name());
+        }
+        int[] metaKeys = new int[metaMap.size()];
+        k = 0;
+        for (String key : metaMap.keySet()) {
+            metaKeys[k++] = dictionary.id(key);
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (SectionWriter out = new SectionWriter(tmp)) {
+            out.header(size);
+            out.begin(DICT_OFFSETS, -1);
+            out.ints(dictionary.offsets());
+            out.begin(DICT_BYTES, -1);
+            out.bytes(dictionary.bytes());
+            if (parameters != null) {
+                out.begin(PARAMETERS, -1);
+                out.bytes(parameters.getBytes(StandardCharsets.UTF_8));
+            }
+            out.begin(MS_DATA, -1);
+            out.ints(msData);
+            out.begin(FILE, -1);
+            out.ints(files);
+            out.begin(INDEX, -1);
+            out.ints(indexes);
+            out.begin(TITLE, -1);
+            out.ints(titles);
+            out.begin(SCAN, -1);
+            out.ints(scans);
+            out.begin(CHARGE, -1);
+            out.ints(charges);
+            out.begin(MZ, -1);
+            out.doubles(mzs);
+            out.begin(RANK, -1);
+            out.ints(ranks);
+            out.begin(PEPTIDE, -1);
+            out.ints(peptides);
+            out.begin(TARGET, -1);
+            out.bytes(targets);
+            out.begin(PROTEIN_OFFSETS, -1);
+            out.ints(proteinOffsets);
+            out.begin(PROTEINS, -1);
+            out.ints(proteins.toArray());
+            k = 0;
+            for (double[] column : scoreMap.values()) {
+                out.begin(SCORE, scoreKeys[k++]);
+                out.doubles(column);
+            }
+            k = 0;
+            for (int[] column : metaMap.values()) {
+                out.begin(META, metaKeys[k++]);
+                out.ints(column);
+            }
+            out.end();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return number of PSMs
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return text of the search parameter file, null if not stored.
+     */
+    public String getParameters()
+    {
+        return parameters;
+    }
+
+    /**
+     * Return a string of the dictionary, strings are decoded once on first use.
+     *
+     * @param id index in the dictionary, -1 for null
+     * @return the string
+     */
+    public String getString(int id)
+    {
+        if (id < 0)
+            return null;
+        String value = strings[id];
+        if (value == null) {
+            int start = dictOffsets.get(id);
+            int end = dictOffsets.get(id + 1);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = dictBytes.duplicate();
+            slice.position(start);
+            slice.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = value;
+        }
+        return value;
+    }
+
+    public String getFileId(int row)
+    {
+        return getString(msData.get(fileColumn.get(row) * 2));
+    }
+
+    public int getIndex(int row)
+    {
+        return indexColumn.get(row);
+    }
+
+    public String getTitle(int row)
+    {
+        return getString(titleColumn.get(row));
+    }
+
+    /**
+     * @return scan number of the PSM, -1 if not known
+     */
+    public int getScan(int row)
+    {
+        return scanColumn.get(row);
+    }
+
+    public int getCharge(int row)
+    {
+        return chargeColumn.get(row);
+    }
+
+    public double getPrecursorMz(int row)
+    {
+        return mzColumn.get(row);
+    }
+
+    public int getRank(int row)
+    {
+        return rankColumn.get(row);
+    }
+
+    /**
+     * @return dictionary id of the peptide, the same peptide has the same id
+     */
+    public int getPeptideId(int row)
+    {
+        return peptideColumn.get(row);
+    }
+
+    public String getPeptide(int row)
+    {
+        return getString(peptideColumn.get(row));
+    }
+
+    public boolean isTarget(int row)
+    {
+        return targetColumn.get(row) != 0;
+    }
+
+    /**
+     * @return accessions of the proteins of the PSM
+     */
+    public List<String> getProteins(int row)
+    {
+        int start = proteinOffsets.get(row);
+        int end = proteinOffsets.get(row + 1);
+        List<String> proteinList = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            proteinList.add(getString(proteinColumn.get(i)));
+        }
+        return proteinList;
+    }
+
+    /**
+     * @return {@link Score}s having a column
+     */
+    public List<Score> getScoreList()
+    {
+        return Collections.unmodifiableList(scoreList);
+    }
+
+    /**
+     * @param score {@link Score}
+     * @return index of the column of the score, -1 if the score is absent.
+     */
+    public int scoreColumn(Score score)
+    {
+        return scoreList.indexOf(score);
+    }
+
+    /**
+     * @param column index of the score column
+     * @param row    index of the PSM
+     * @return value of the score, NaN if the PSM does not have it.
+     */
+    public double getScore(int column, int row)
+    {
+        return scoreColumnList.get(column).get(row);
+    }
+
+    /**
+     * @return ids of the meta keys having a column
+     */
+    public List<String> getMetaKeyList()
+    {
+        return Collections.unmodifiableList(metaKeyList);
+    }
+
+    /**
+     * @param key id of the meta key
+     * @param row index of the PSM
+     * @return value of the meta, null if absent.
+     */
+    public String getMeta(String key, int row)
+    {
+        int column = metaKeyList.indexOf(key);
+        return column < 0 ? null : getString(metaColumnList.get(column).get(row));
+    }
+
+    /**
+     * Create the {@link IdentResult} of all PSMs.
+     *
+     * @return {@link IdentResult}
+     */
+    public IdentResult toIdentResult() throws IOException
+    {
+        return toIdentResult(row -> true);
+    }
+
+    /**
+     * Create the {@link IdentResult} of the PSMs accepted by the filter, the filter is tested on the columns, so that
+     * rejected PSMs are never created.
+     *
+     * @param rowFilter filter of the PSM indexes
+     * @return {@link IdentResult}
+     */
+    public IdentResult toIdentResult(IntPredicate rowFilter) throws IOException
+    {
+        IdentResult result = new IdentResult("Identification Result");
+        if (parameters != null) {
+            Path tmp = Files.createTempFile("omics", ".pcf");
+            try {
+                Files.write(tmp, parameters.getBytes(StandardCharsets.UTF_8));
+                result.setParameters(SearchParameters.getParameter(tmp.toString()));
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        MsDataId[] msDataIds = new MsDataId[msData.limit() / 2];
+        for (int i = 0; i < msDataIds.length; i++) {
+            msDataIds[i] = new MsDataId(getString(msData.get(i * 2)), getString(msData.get(i * 2 + 1)));
+        }
+        Map<Integer, Peptide> peptideMap = new HashMap<>();
+        Map<Integer, ProteinMatch> proteinMap = new HashMap<>();
+        for (int row = 0; row < size; row++) {
+            if (!rowFilter.test(row))
+                continue;
+            Peptide peptide = peptideMap.computeIfAbsent(peptideColumn.get(row), id -> Peptide.parse(getString(id)));
+            PeptideSpectrumMatch psm = new PeptideSpectrumMatch(peptide);
+            psm.setMsDataId(msDataIds[fileColumn.get(row)]);
+            psm.getIdentifier().setIndex(indexColumn.get(row));
+            psm.getIdentifier().setTitle(getTitle(row));
+            if (scanColumn.get(row) >= 0)
+                psm.getIdentifier().addScanNumber(new ScanNumberDiscrete(scanColumn.get(row)));
+            psm.setPrecursorMz(mzColumn.get(row));
+            psm.setPrecursorCharge(chargeColumn.get(row));
+            psm.setRank(rankColumn.get(row));
+            psm.setHitType(isTarget(row) ? HitType.TARGET : HitType.DECOY);
+
+            Set<PeptideProteinMatch> proteinSet = new HashSet<>();
+            for (int i = proteinOffsets.get(row); i < proteinOffsets.get(row + 1); i++) {
+                ProteinMatch proteinMatch = proteinMap.computeIfAbsent(proteinColumn.get(i),
+                        id -> new ProteinMatch(getString(id)));
+                proteinSet.add(new PeptideProteinMatch(proteinMatch));
+            }
+            psm.getPeptideMatch().setPeptideProteinMatches(proteinSet);
+
+            for (int i = 0; i < scoreList.size(); i++) {
+                double value = scoreColumnList.get(i).get(row);
+                if (Double.isNaN(value))
+                    continue;
+                Score score = scoreList.get(i);
+                if (score.isDouble())
+                    psm.addScore(score, value);
+                else
+                    psm.addScore(score, (int) value);
+            }
+            for (int i = 0; i < metaKeyList.size(); i++) {
+                int value = metaColumnList.get(i).get(row);
+                if (value >= 0)
+                    psm.addMeta(new MetaKey(metaKeyList.get(i)), getString(value));
+            }
+            result.add(psm);
+        }
+        result.buildReference();
+        return result;
+    }
+
+    /**
+     * Close the file, the mapped columns are released once they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Strings indexed in the order they are first seen.
+     */
+    private static final class StringDictionary
+    {
+        private final Map<String, Integer> idMap = new HashMap<>();
+        private final IntList offsets = new IntList();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        StringDictionary()
+        {
+            offsets.add(0);
+        }
+
+        int id(String value)
+        {
+            if (value == null)
+                return -1;
+            Integer id = idMap.get(value);
+            if (id == null) {
+                id = idMap.size();
+                idMap.put(value, id);
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+                offsets.add(bytes.size());
+            }
+            return id;
+        }
+
+        int[] offsets()
+        {
+            return offsets.toArray();
+        }
+
+        byte[] bytes()
+        {
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class IntList
+    {
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int value)
+        {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        int[] toArray()
+        {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Write the sections and the directory of their offsets at the end of the file.
+     */
+    private static final class SectionWriter implements Closeable
+    {
+        private final DataOutputStream out;
+        private final List<long[]> directory = new ArrayList<>();
+        private long position;
+
+        SectionWriter(Path file) throws IOException
+        {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        }
+
+        void header(int size) throws IOException
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            position = 12;
+        }
+
+        void begin(int kind, int key)
+        {
+            finishSection();
+            directory.add(new long[]{kind, key, position, -1});
+        }
+
+        private void finishSection()
+        {
+            if (!directory.isEmpty()) {
+                long[] last = directory.get(directory.size() - 1);
+                if (last[3] < 0)
+                    last[3] = position - last[2];
+            }
+        }
+
+        void ints(int[] values) throws IOException
+        {
+            for (int value : values) {
+                out.writeInt(value);
+            }
+            position += values.length * 4L;
+        }
+
+        void doubles(double[] values) throws IOException
+        {
+            for (double value : values) {
+                out.writeDouble(value);
+            }
+            position += values.length * 8L;
+        }
+
+        void bytes(byte[] values) throws IOException
+        {
+            out.write(values);
+            position += values.length;
+        }
+
+        void end() throws IOException
+        {
+            finishSection();
+            long directoryOffset = position;
+            out.writeInt(directory.size());
+            for (long[] entry : directory) {
+                out.writeInt((int) entry[0]);
+                out.writeInt((int) entry[1]);
+                out.writeLong(entry[2]);
+                out.writeLong(entry[3]);
+            }
+            out.writeLong(directoryOffset);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package omics.gui.task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split spectra into {@link SearchChunk}s according to their estimated search cost.
+ * <p>
+ * The chunks are cut by cost instead of by number of spectra, a chunk costs at most as much as an average chunk of
+ * <code>taskUnit</code> spectra. Chunks become smaller towards the end (guided scheduling): each chunk takes at most
+ * <code>1/(2 * nrThread)</code> of the remaining cost, so the last chunks are short and the workers finish together.
+ * A chunk contains at most twice <code>taskUnit</code> spectra.
+ *
+ * @version 1.0.0
+ */
+public class ChunkPlanner
+{
+    /**
+     * The smallest chunk costs at least 1/MIN_CHUNK_FRACTION of an average chunk.
+     */
+    private static final int MIN_CHUNK_FRACTION = 8;
+
+    private ChunkPlanner() { }
+
+    /**
+     * Split spectra into chunks.
+     *
+     * @param costs    estimated cost of each spectrum
+     * @param taskUnit average number of spectra per chunk
+     * @param nrThread number of threads to run the chunks
+     * @return {@link SearchChunk} list in spectrum index order.
+     */
+    public static List<SearchChunk> plan(double[] costs, int taskUnit, int nrThread)
+    {
+        int numberOfScan = costs.length;
+        List<SearchChunk> chunkList = new ArrayList<>();
+        if (numberOfScan == 0)
+            return chunkList;
+
+        double totalCost = 0;
+        for (double cost : costs) {
+            totalCost += cost;
+        }
+
+        int unit = Math.max(taskUnit, 1);
+        if (numberOfScan <= unit || totalCost <= 0) {
+            chunkList.add(new SearchChunk(0, numberOfScan, totalCost));
+            return chunkList;
+        }
+
+        double unitCost = totalCost * unit / numberOfScan;
+        double minCost = unitCost / MIN_CHUNK_FRACTION;
+        int threads = Math.max(nrThread, 1);
+        int maxSize = unit * 2;
+
+        double remainCost = totalCost;
+        int start = 0;
+        while (start < numberOfScan) {
+            double target = Math.max(Math.min(unitCost, remainCost / (2 * threads)), minCost);
+            double chunkCost = 0;
+            int end = start;
+            while (end < numberOfScan && end - start < maxSize
+                    && (end == start || chunkCost + costs[end] <= target)) {
+                chunkCost += costs[end];
+                end++;
+            }
+            // merge the small remainder into the last chunk
+            if (numberOfScan - end > 0 && numberOfScan - start <= maxSize && remainCost - chunkCost < minCost) {
+                while (end < numberOfScan) {
+                    chunkCost += costs[end];
+                    end++;
+                }
+            }
+            chunkList.add(new SearchChunk(start, end, chunkCost));
+            remainCost -= chunkCost;
+            start = end;
+        }
+        return chunkList;
+    }
+}
@@ -0,0 +1,199 @@
+package omics.gui.task;
+
+import omics.util.protein.database.util.DoShuffleDB;
+import omics.util.protein.digest.Protease;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+
+/**
+ * On-disk cache of the prepared search database.
+ * <p>
+ * The length-to-peptide-count array of a database is stored in a small binary file, named by the SHA-256 of the FASTA
+ * content and the digestion/decoy settings, so it is valid as long as the FASTA is unchanged. The file is laid out as
+ * a header followed by big-endian ints, and is read through a memory mapped buffer.
+ *
+ * @version 1.0.0
+ */
+public class DatabaseCache
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(DatabaseCache.class);
+
+    /**
+     * directory name of the cache, created next to the database.
+     */
+    public static final String CACHE_DIR = ".omics_cache";
+    private static final String LEN_COUNT_EXT = ".lencount";
+    private static final int MAGIC = 0x4F4D4C43;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+    /**
+     * Compute the length-to-count array when it is not in the cache.
+     */
+    @FunctionalInterface
+    public interface Length2CountFunction
+    {
+        int[] compute() throws IOException;
+    }
+
+    private final Path cacheDir;
+
+    /**
+     * Constructor.
+     *
+     * @param cacheDir directory to store the cache files
+     */
+    public DatabaseCache(Path cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Return the cache in {@link #CACHE_DIR} next to the database.
+     *
+     * @param database database path
+     * @return {@link DatabaseCache}
+     */
+    public static DatabaseCache of(Path database)
+    {
+        Path parent = database.toAbsolutePath().getParent();
+        return new DatabaseCache(parent.resolve(CACHE_DIR));
+    }
+
+    /**
+     * Return the length-to-count array of a FASTA file, from the cache if it is valid, otherwise compute and store it.
+     *
+     * @param fasta    FASTA file
+     * @param settings digestion and decoy settings the array depends on
+     * @param function function to compute the array
+     * @return length-to-count array
+     */
+    public int[] getLength2Count(Path fasta, String settings, Length2CountFunction function) throws IOException
+    {
+        String key;
+        try {
+            key = key(fasta, settings);
+        } catch (IOException e) {
+            logger.warn("Failed to hash {}, cache is not used: {}", fasta, e.getMessage());
+            return function.compute();
+        }
+
+        Path file = cacheDir.resolve(key + LEN_COUNT_EXT);
+        Optional<int[]> cached = read(file);
+        if (cached.isPresent()) {
+            logger.info("Load length count of {} from cache", fasta.getFileName());
+            return cached.get();
+        }
+
+        int[] count = function.compute();
+        try {
+            write(file, count);
+        } catch (IOException e) {
+            logger.warn("Failed to write database cache {}: {}", file, e.getMessage());
+        }
+        return count;
+    }
+
+    /**
+     * Return the settings the length-to-count array depends on.
+     *
+     * @param protease {@link Protease}
+     * @param decoy    true for the decoy database
+     * @return settings string
+     */
+    public static String settings(Protease protease, boolean decoy)
+    {
+        String settings = "unspecific=" + protease.isUnspecific();
+        if (decoy)
+            settings += ";decoy=" + DecoyGenerator.Type.REVERSE + ":" + DoShuffleDB.DECOY_PROTEIN_PREFIX;
+        return settings;
+    }
+
+    /**
+     * Return the cache key of a FASTA file, which is the SHA-256 of the file content and the settings.
+     *
+     * @param fasta    FASTA file
+     * @param settings settings the cached value depends on
+     * @return hex string of the key
+     */
+    public static String key(Path fasta, String settings) throws IOException
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[1 << 20];
+        try (InputStream inputStream = Files.newInputStream(fasta)) {
+            int n;
+            while ((n = inputStream.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    private static Optional<int[]> read(Path file)
+    {
+        if (Files.notExists(file))
+            return Optional.empty();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE)
+                return Optional.empty();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return Optional.empty();
+            int length = buffer.getInt();
+            if (length < 0 || HEADER_SIZE + (long) length * Integer.BYTES != size)
+                return Optional.empty();
+            IntBuffer intBuffer = buffer.asIntBuffer();
+            int[] values = new int[length];
+            intBuffer.get(values);
+            return Optional.of(values);
+        } catch (IOException e) {
+            logger.warn("Failed to read database cache {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static void write(Path file, int[] values) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + values.length * Integer.BYTES);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(values.length);
+        buffer.asIntBuffer().put(values);
+
+        // write to a temporary file first, so that a broken file is never seen by other runs
+        Path tmpFile = Files.createTempFile(file.getParent(), "lencount", ".tmp");
+        try {
+            Files.write(tmpFile, buffer.array());
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package omics.gui.task;
+
+import omics.pdk.ident.IGD;
+import omics.pdk.ident.SearchParameters;
+import omics.util.io.FilenameUtils;
+import omics.util.protein.database.FastaSequence;
+import omics.util.protein.database.util.DoShuffleDB;
+import omics.util.protein.digest.Protease;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Session level registry of {@link PreparedDatabase}s, so that searches against the same database share one copy.
+ * <p>
+ * Databases are reference counted, a database released by all its users stays in the registry until the estimated
+ * memory of all databases exceeds the memory cap, then the least recently used ones are evicted.
+ *
+ * @version 1.0.0
+ */
+public class DatabaseRegistry
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(DatabaseRegistry.class);
+
+    /**
+     * estimated heap bytes used by a database per byte of FASTA file, sequence plus suffix array.
+     */
+    private static final int BYTES_PER_FASTA_BYTE = 6;
+
+    private static final DatabaseRegistry INSTANCE = new DatabaseRegistry();
+
+    /**
+     * @return the {@link DatabaseRegistry} shared by this session.
+     */
+    public static DatabaseRegistry getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private final LinkedHashMap<String, FutureTask<PreparedDatabase>> databaseMap = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryCap = Runtime.getRuntime().maxMemory() / 2;
+
+    /**
+     * Set the max estimated memory of databases kept in the registry, databases in use are never evicted.
+     *
+     * @param memoryCap memory cap in bytes
+     */
+    public synchronized void setMemoryCap(long memoryCap)
+    {
+        this.memoryCap = memoryCap;
+        evict();
+    }
+
+    /**
+     * Return the database of the {@link SearchParameters}, prepare it if it is not in the registry. Call
+     * {@link PreparedDatabase#release()} when it is no longer used.
+     *
+     * @param parameters {@link SearchParameters}
+     * @return {@link PreparedDatabase}
+     */
+    public PreparedDatabase acquire(SearchParameters parameters) throws IOException
+    {
+        Path database = parameters.getDatabase();
+        Protease protease = parameters.getProtease();
+        boolean searchDecoy = parameters.isSearchDecoy();
+        String key = key(database, protease, searchDecoy);
+
+        while (true) {
+            FutureTask<PreparedDatabase> task;
+            boolean owner = false;
+            synchronized (this) {
+                task = databaseMap.get(key);
+                if (task == null) {
+                    task = new FutureTask<>(() -> load(key, database, protease, searchDecoy));
+                    databaseMap.put(key, task);
+                    owner = true;
+                }
+            }
+
+            if (owner) {
+                logger.info("Prepare database {}", database.getFileName());
+                task.run();
+            }
+
+            PreparedDatabase preparedDatabase;
+            try {
+                preparedDatabase = task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                synchronized (this) {
+                    databaseMap.remove(key, task);
+                }
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                throw new IOException(cause);
+            }
+
+            synchronized (this) {
+                // the database may be evicted before it is retained, prepare it again in that case
+                if (databaseMap.get(key) != task)
+                    continue;
+                preparedDatabase.retain();
+                evict();
+            }
+            if (!owner)
+                logger.info("Reuse prepared database {}", database.getFileName());
+            return preparedDatabase;
+        }
+    }
+
+    synchronized void release(PreparedDatabase preparedDatabase)
+    {
+        preparedDatabase.unretain();
+        evict();
+    }
+
+    /**
+     * @return total estimated bytes of prepared databases in the registry.
+     */
+    public synchronized long getEstimatedBytes()
+    {
+        long bytes = 0;
+        for (PreparedDatabase preparedDatabase : getPreparedList()) {
+            bytes += preparedDatabase.getEstimatedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Remove all databases not in use.
+     */
+    public synchronized void clear()
+    {
+        Iterator<FutureTask<PreparedDatabase>> it = databaseMap.values().iterator();
+        while (it.hasNext()) {
+            PreparedDatabase preparedDatabase = getIfDone(it.next());
+            if (preparedDatabase != null && preparedDatabase.getRefCount() == 0) {
+                it.remove();
+                preparedDatabase.dispose();
+            }
+        }
+    }
+
+    /**
+     * Evict least recently used databases not in use until the memory is under the cap.
+     */
+    private void evict()
+    {
+        long bytes = getEstimatedBytes();
+        Iterator<Map.Entry<String, FutureTask<PreparedDatabase>>> it = databaseMap.entrySet().iterator();
+        while (bytes > memoryCap && it.hasNext()) {
+            Map.Entry<String, FutureTask<PreparedDatabase>> entry = it.next();
+            PreparedDatabase preparedDatabase = getIfDone(entry.getValue());
+            if (preparedDatabase == null || preparedDatabase.getRefCount() > 0)
+                continue;
+            it.remove();
+            preparedDatabase.dispose();
+            bytes -= preparedDatabase.getEstimatedBytes();
+            logger.info("Evict database {}", entry.getKey());
+        }
+    }
+
+    private List<PreparedDatabase> getPreparedList()
+    {
+        List<PreparedDatabase> list = new ArrayList<>(databaseMap.size());
+        for (FutureTask<PreparedDatabase> task : databaseMap.values()) {
+            PreparedDatabase preparedDatabase = getIfDone(task);
+            if (preparedDatabase != null)
+                list.add(preparedDatabase);
+        }
+        return list;
+    }
+
+    private static PreparedDatabase getIfDone(FutureTask<PreparedDatabase> task)
+    {
+        if (!task.isDone())
+            return null;
+        try {
+            return task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return null;
+        }
+    }
+
+    private static String key(Path database, Protease protease, boolean searchDecoy) throws IOException
+    {
+        Path path = database.toAbsolutePath();
+        return path + "|" + Files.size(path) + "|" + Files.getLastModifiedTime(path).toMillis()
+                + "|unspecific=" + protease.isUnspecific() + "|decoy=" + searchDecoy;
+    }
+
+    private PreparedDatabase load(String key, Path database, Protease protease, boolean searchDecoy)
+            throws IOException
+    {
+        Path targetDatabase = FilenameUtils.newExtension(database, IGD.TARGET_FASTA);
+        if (Files.notExists(targetDatabase)) {
+            Files.copy(database, targetDatabase);
+        }
+        DatabaseCache cache = DatabaseCache.of(database);
+        FastaSequence targetSequence = new FastaSequence(targetDatabase.toString());
+        int[] targetCount = cache.getLength2Count(targetDatabase, DatabaseCache.settings(protease, false),
+                () -> LengthHistogram.compute(targetSequence, protease.isUnspecific()));
+        long bytes = Files.size(targetDatabase);
+
+        FastaSequence decoySequence = null;
+        int[] decoyCount = null;
+        if (searchDecoy) {
+            Path decoyDatabase = FilenameUtils.newExtension(database, IGD.DECOY_FASTA);
+            if (Files.notExists(decoyDatabase)) {
+                new DecoyGenerator(database, decoyDatabase, DecoyGenerator.Type.REVERSE,
+                        DoShuffleDB.DECOY_PROTEIN_PREFIX).go();
+            }
+            FastaSequence sequence = new FastaSequence(decoyDatabase.toString());
+            decoyCount = cache.getLength2Count(decoyDatabase, DatabaseCache.settings(protease, true),
+                    () -> LengthHistogram.compute(sequence, protease.isUnspecific()));
+            decoySequence = sequence;
+            bytes += Files.size(decoyDatabase);
+        }
+
+        PreparedDatabase preparedDatabase = new PreparedDatabase(key, targetSequence, targetCount, decoySequence,
+                decoyCount, bytes * BYTES_PER_FASTA_BYTE);
+        preparedDatabase.setRegistry(this);
+        return preparedDatabase;
+    }
+}
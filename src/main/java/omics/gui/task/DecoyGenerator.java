@@ -0,0 +1,345 @@
+package omics.gui.task;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Generate decoy database from a FASTA file.
+ * <p>
+ * The FASTA file is cut into chunks of about {@link #CHUNK_SIZE} bytes at protein boundaries, each chunk is memory
+ * mapped and converted to decoy proteins by a pool of threads, and the converted chunks are written in input order.
+ * At most twice the number of threads chunks are in flight, so the memory is constant regardless of the database
+ * size. The output is the same for any number of threads.
+ * <p>
+ * The decoy tag is inserted before the accession as <code>DoShuffleDB.TagPos.BEFORE_ACC</code>, such as
+ * <code>sp|DECOY_P12345|NAME</code> for UniProt headers and <code>DECOY_P12345</code> for other headers.
+ *
+ * @version 1.0.0
+ */
+public class DecoyGenerator
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(DecoyGenerator.class);
+
+    /**
+     * Type of decoy sequence.
+     */
+    public enum Type
+    {
+        /**
+         * reversed protein sequence
+         */
+        REVERSE,
+        /**
+         * shuffled protein sequence, the shuffle is seeded by the protein header so it is reproducible.
+         */
+        SHUFFLE
+    }
+
+    static final int CHUNK_SIZE = 4 << 20;
+    private static final int LINE_WIDTH = 60;
+
+    private final Path input;
+    private final Path output;
+    private final Type type;
+    private final String decoyTag;
+    private boolean concatenate = false;
+    private int nrThread = Runtime.getRuntime().availableProcessors();
+    private DoubleConsumer progressListener = progress -> { };
+
+    /**
+     * Constructor.
+     *
+     * @param input    target FASTA file
+     * @param output   output FASTA file
+     * @param type     {@link Type} of decoy
+     * @param decoyTag tag inserted before the accession of decoy protein headers
+     */
+    public DecoyGenerator(Path input, Path output, Type type, String decoyTag)
+    {
+        this.input = input;
+        this.output = output;
+        this.type = type;
+        this.decoyTag = decoyTag;
+    }
+
+    /**
+     * @param concatenate true to write the target proteins before the decoy proteins
+     */
+    public void setConcatenate(boolean concatenate)
+    {
+        this.concatenate = concatenate;
+    }
+
+    /**
+     * @param nrThread number of threads to generate decoy
+     */
+    public void setThreadCount(int nrThread)
+    {
+        this.nrThread = Math.max(nrThread, 1);
+    }
+
+    /**
+     * @param progressListener listener of progress in [0, 1]
+     */
+    public void setProgressListener(DoubleConsumer progressListener)
+    {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Generate the decoy database, the output is written to a temporary file and moved to the output path when it is
+     * complete.
+     */
+    public void go() throws IOException
+    {
+        long startTime = System.currentTimeMillis();
+        Path tmpFile = output.resolveSibling(output.getFileName() + ".tmp");
+        ExecutorService executor = Executors.newFixedThreadPool(nrThread);
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            if (concatenate) {
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+                if (size > 0 && lastByte(in, size) != '\n')
+                    out.write(ByteBuffer.wrap(new byte[]{'\n'}));
+            }
+
+            ArrayDeque<Future<byte[]>> pendingQueue = new ArrayDeque<>();
+            ArrayDeque<Long> endQueue = new ArrayDeque<>();
+            int maxPending = nrThread * 2;
+            long start = findHeader(in, 0, size);
+            while (start < size) {
+                if (Thread.currentThread().isInterrupted())
+                    throw new InterruptedIOException("Decoy generation is cancelled");
+                long end = nextBoundary(in, start, size);
+                long chunkStart = start;
+                pendingQueue.add(executor.submit(() -> convert(in, chunkStart, end)));
+                endQueue.add(end);
+                if (pendingQueue.size() >= maxPending) {
+                    write(out, pendingQueue.poll());
+                    progressListener.accept((double) endQueue.poll() / size);
+                }
+                start = end;
+            }
+            while (!pendingQueue.isEmpty()) {
+                write(out, pendingQueue.poll());
+                progressListener.accept((double) endQueue.poll() / size);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmpFile);
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Files.move(tmpFile, output, StandardCopyOption.REPLACE_EXISTING);
+        progressListener.accept(1.0);
+        logger.info("Decoy database {} generated in {} ms", output.getFileName(), System.currentTimeMillis() - startTime);
+    }
+
+    private static void write(FileChannel out, Future<byte[]> future) throws IOException
+    {
+        byte[] bytes;
+        try {
+            bytes = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException)
+                throw ((UncheckedIOException) cause).getCause();
+            throw new IOException(cause);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static byte lastByte(FileChannel in, long size) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        in.read(buffer, size - 1);
+        return buffer.get(0);
+    }
+
+    /**
+     * Return the position of the first protein header after <code>start + CHUNK_SIZE</code>, or the file size.
+     */
+    private static long nextBoundary(FileChannel in, long start, long size) throws IOException
+    {
+        return findHeader(in, start + CHUNK_SIZE, size);
+    }
+
+    /**
+     * Return the position of the first protein header at or after <code>from</code>, or the file size.
+     */
+    private static long findHeader(FileChannel in, long from, long size) throws IOException
+    {
+        if (from >= size)
+            return size;
+
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        // a header is '>' at the file start or after a newline
+        long position = from;
+        byte previous = '\n';
+        if (from > 0) {
+            in.read(buffer, from - 1);
+            previous = buffer.get(0);
+        }
+        while (position < size) {
+            buffer.clear();
+            int n = in.read(buffer, position);
+            if (n <= 0)
+                break;
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                if (b == '>' && previous == '\n')
+                    return position + i;
+                previous = b;
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    /**
+     * Convert the proteins in [start, end) of the file to decoy proteins.
+     */
+    private byte[] convert(FileChannel in, long start, long end)
+    {
+        MappedByteBuffer buffer;
+        try {
+            buffer = in.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) (end - start) + 1024);
+        StringBuilder header = null;
+        StringBuilder sequence = new StringBuilder();
+        StringBuilder line = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            line.setLength(0);
+            while (buffer.hasRemaining()) {
+                char c = (char) (buffer.get() & 0xFF);
+                if (c == '\n')
+                    break;
+                if (c != '\r')
+                    line.append(c);
+            }
+            if (line.length() > 0 && line.charAt(0) == '>') {
+                if (header != null)
+                    writeDecoy(out, header, sequence);
+                header = new StringBuilder(line.substring(1));
+                sequence.setLength(0);
+            } else if (header != null) {
+                for (int i = 0; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (!Character.isWhitespace(c))
+                        sequence.append(c);
+                }
+            }
+        }
+        if (header != null)
+            writeDecoy(out, header, sequence);
+        return out.toByteArray();
+    }
+
+    private void writeDecoy(ByteArrayOutputStream out, CharSequence header, StringBuilder sequence)
+    {
+        char[] residues = decoy(header, sequence);
+
+        StringBuilder builder = new StringBuilder(header.length() + residues.length + residues.length / LINE_WIDTH + 8);
+        builder.append('>');
+        appendHeader(builder, header);
+        builder.append('\n');
+        for (int i = 0; i < residues.length; i += LINE_WIDTH) {
+            builder.append(residues, i, Math.min(LINE_WIDTH, residues.length - i)).append('\n');
+        }
+        for (int i = 0; i < builder.length(); i++) {
+            out.write(builder.charAt(i));
+        }
+    }
+
+    /**
+     * Append the header with the decoy tag before the accession, which follows the database code in UniProt headers
+     * such as <code>sp|P12345|NAME</code>, and starts other headers.
+     */
+    void appendHeader(StringBuilder builder, CharSequence header)
+    {
+        int end = 0;
+        while (end < header.length() && !Character.isWhitespace(header.charAt(end))) {
+            end++;
+        }
+        int first = -1;
+        int pipes = 0;
+        for (int i = 0; i < end; i++) {
+            if (header.charAt(i) == '|') {
+                if (first < 0)
+                    first = i;
+                pipes++;
+            }
+        }
+        if (pipes >= 2) {
+            builder.append(header, 0, first + 1).append(decoyTag).append(header, first + 1, header.length());
+        } else {
+            builder.append(decoyTag).append(header);
+        }
+    }
+
+    /**
+     * Return the decoy sequence of a protein.
+     *
+     * @param header   protein header, used as shuffle seed
+     * @param sequence protein sequence
+     * @return decoy sequence
+     */
+    char[] decoy(CharSequence header, CharSequence sequence)
+    {
+        int length = sequence.length();
+        char[] residues = new char[length];
+        for (int i = 0; i < length; i++) {
+            residues[i] = sequence.charAt(i);
+        }
+        if (type == Type.REVERSE) {
+            for (int i = 0, j = length - 1; i < j; i++, j--) {
+                char tmp = residues[i];
+                residues[i] = residues[j];
+                residues[j] = tmp;
+            }
+        } else {
+            Random random = new Random(header.toString().hashCode());
+            for (int i = length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                char tmp = residues[i];
+                residues[i] = residues[j];
+                residues[j] = tmp;
+            }
+        }
+        return residues;
+    }
+}
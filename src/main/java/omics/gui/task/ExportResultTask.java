@@ -4,12 +4,10 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Ordering;
-import javafx.concurrent.Task;
 import omics.pdk.IdentResult;
 import omics.pdk.ident.model.*;
 import omics.pdk.parameters.IdentParameters;
 import omics.pdk.pia.ProteinInference;
-import omics.pdk.psm.PSMKeyFunc;
 import omics.pdk.psm.consumer.CalcLogEValue;
 import omics.pdk.psm.filter.PSMScoreFilter;
 import omics.pdk.psm.filter.RemoveDecoyProtein;
@@ -18,25 +16,39 @@ import omics.util.MetaKey;
 import omics.util.OmicsException;
 import omics.util.io.FilenameUtils;
 import omics.util.ms.MsDataId;
+import omics.util.ms.ScanNumber;
 import omics.util.protein.database.Protein;
 import omics.util.protein.database.ProteinDB;
 import omics.util.utils.DelegateFilter;
 import omics.util.utils.StringUtils;
+import omics.util.utils.SystemUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * Combine multiple mzid files to omics-excel.
+ * Combine multiple mzid or {@link BinaryResult} files to omics-excel.
  *
  * @author JiaweiMao
  * @version 2.0.0
  * @since 24 Oct 2018, 10:27 AM
  */
-public class ExportResultTask extends Task<Void>
+public class ExportResultTask extends ReportingTask<Void>
 {
+    /**
+     * max ratio of PSMs passing the thresholds to parse the prefiltered copy.
+     */
+    private static final double PREFILTER_KEPT_RATIO = 0.5;
+
     private final double fdr;
     private final double maxEValue;
     private final int minRankScore;
@@ -48,6 +60,9 @@ public class ExportResultTask extends Task<Void>
     private final String decoyTag;
     private boolean removeSameset;
     private String fasta;
+    private int nrThread = 0;
+    private boolean prefilter = false;
+    private Path tempDirectory;
 
     private final List<String> keepFields = Arrays.asList("Delta Mass", "Delta Name", "Isotope");
 
@@ -86,8 +101,39 @@ public class ExportResultTask extends Task<Void>
         this.fasta = fasta;
     }
 
+    /**
+     * @param nrThread number of files parsed at the same time, 0 for all cores.
+     */
+    public void setThreadCount(int nrThread)
+    {
+        this.nrThread = nrThread;
+    }
+
+    /**
+     * Set true to drop the PSMs of mzid files failing the score thresholds before the files are parsed. Each file is
+     * scanned first, and the filtered copy is only parsed when the thresholds drop most PSMs, otherwise the file is
+     * parsed as it is. Off by default, the scan only pays off when most PSMs fail the thresholds.
+     *
+     * @param prefilter true to prefilter mzid files.
+     */
+    public void setPrefilter(boolean prefilter)
+    {
+        this.prefilter = prefilter;
+    }
+
+    /**
+     * Set the directory of the filtered copies of the mzid files, by default they are written next to the output file.
+     * The directory is created if it does not exist.
+     *
+     * @param tempDirectory directory of the temporary files, null for the directory of the output file.
+     */
+    public void setTempDirectory(Path tempDirectory)
+    {
+        this.tempDirectory = tempDirectory;
+    }
+
     @Override
-    protected Void call() throws OmicsException
+    protected Void call() throws OmicsException, IOException
     {
         updateTitle("Generate result");
         if (removeSameset) {
@@ -105,35 +151,66 @@ public class ExportResultTask extends Task<Void>
         }
 
         IdentParameters parameters = null;
-        Comparator<PeptideSpectrumMatch> scoreComp = Score.RANK_SCORE::compare;
-        ArrayListMultimap<String, PeptideSpectrumMatch> psmMap = ArrayListMultimap.create();
+        TopNSelector<PeptideSpectrumMatch> psmSelector = new TopNSelector<>(topN, ExportResultTask::rankScore, 16);
+        Map<String, Integer> fileOrdinalMap = new HashMap<>();
         Set<MsDataId> idSet = new HashSet<>();
-        for (File file : fileList) {
-            updateMessage("Reading " + file.getName());
-            IdentResult result = IdentResult.read(file.toPath(), decoyTag);
-
-            // the original id is not unique across multiple files.
-            for (MsDataId msDataID : result.getMsDataIds()) {
-                msDataID.setId(FilenameUtils.removeExtension(msDataID.getName()));
-                idSet.add(msDataID);
-            }
-            if (parameters == null)
-                parameters = result.getParameters();
-
-            result.apply(filterList);
-            ArrayListMultimap<String, PeptideSpectrumMatch> tmpMap = ArrayListMultimap.create();
-            for (PeptideSpectrumMatch psm : result) {
-                String key = psm.getId(PSMKeyFunc.FILE_SCAN);
-                tmpMap.put(key, psm);
-            }
 
-            for (String key : tmpMap.keySet()) {
-                List<PeptideSpectrumMatch> psmList = tmpMap.get(key);
-                psmList.sort(scoreComp);
-                List<PeptideSpectrumMatch> rankList = rank(psmList);
-                psmMap.putAll(key, rankList);
+        // files are parsed concurrently, but merged in the input order so that the output does not depend on the
+        // threads, at most nrThread parsed files are waiting to be merged.
+        int coreCount = SystemUtils.getProcessorCount();
+        int threads = nrThread <= 0 || nrThread > coreCount ? coreCount : nrThread;
+        threads = Math.max(1, Math.min(threads, fileList.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Deque<Future<FileResult>> futures = new ArrayDeque<>();
+            int submitted = 0;
+            for (int i = 0; i < fileList.size(); i++) {
+                while (submitted < fileList.size() && futures.size() < threads) {
+                    File file = fileList.get(submitted++);
+                    futures.add(executor.submit(() -> readFile(file, filterList)));
+                }
+                FileResult fileResult;
+                try {
+                    fileResult = futures.poll().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException)
+                        throw (IOException) cause;
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    throw new IOException(cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    InterruptedIOException exception = new InterruptedIOException("Export is interrupted");
+                    exception.initCause(e);
+                    throw exception;
+                }
+                idSet.addAll(fileResult.msDataIds);
+                if (parameters == null)
+                    parameters = fileResult.parameters;
+                // the spectrum keys of each file refer to its own MS file ordinals
+                int[] ordinals = new int[fileResult.fileIds.size()];
+                for (int j = 0; j < ordinals.length; j++) {
+                    String fileId = fileResult.fileIds.get(j);
+                    ordinals[j] = fileOrdinalMap.computeIfAbsent(fileId, id -> fileOrdinalMap.size());
+                }
+                TopNSelector<PeptideSpectrumMatch> fileSelector = fileResult.psmSelector;
+                for (int j = 0; j < fileSelector.size(); j++) {
+                    long key = fileSelector.keyAt(j);
+                    long globalKey = SpectrumKeyMap.withFile(key, ordinals[SpectrumKeyMap.file(key)]);
+                    for (PeptideSpectrumMatch psm : fileSelector.valueAt(j)) {
+                        psmSelector.offer(globalKey, psm);
+                    }
+                }
+                updateMessage("Read " + fileResult.file.getName());
+                updateProgress(i + 1, fileList.size());
+                if (isCancelled())
+                    return null;
             }
+        } finally {
+            executor.shutdownNow();
         }
+        updateProgress(-1, 1);
 
         assert parameters != null;
         parameters.setMsDataIds(idSet);
@@ -142,12 +219,10 @@ public class ExportResultTask extends Task<Void>
         parameters.addPSMScore(Score.PSM_Q_VALUE, fdr);
 
         IdentResult identResult = new IdentResult("Identification Result").setParameters(parameters);
-        for (String key : psmMap.keySet()) {
-            List<PeptideSpectrumMatch> psmList = psmMap.get(key);
-            psmList.sort(scoreComp);
-
-            List<PeptideSpectrumMatch> rankList = rank(psmList);
-            identResult.addAll(rankList);
+        for (int i = 0; i < psmSelector.size(); i++) {
+            List<PeptideSpectrumMatch> psmList = psmSelector.valueAt(i);
+            rank(psmList);
+            identResult.addAll(psmList);
         }
 
         identResult.apply(CalcLogEValue.with(Score.SPEC_EVALUE));
@@ -179,24 +254,138 @@ public class ExportResultTask extends Task<Void>
     }
 
 
-    private List<PeptideSpectrumMatch> rank(List<PeptideSpectrumMatch> psmList)
+    /**
+     * Read a file, and select the top-N PSMs of each spectrum as they are read.
+     */
+    private FileResult readFile(File file, DelegateFilter<PeptideSpectrumMatch> filterList) throws IOException
+    {
+        IdentResult result = read(file, filterList);
+
+        // the original id is not unique across multiple files.
+        List<MsDataId> msDataIds = new ArrayList<>();
+        for (MsDataId msDataID : result.getMsDataIds()) {
+            msDataID.setId(FilenameUtils.removeExtension(msDataID.getName()));
+            msDataIds.add(msDataID);
+        }
+
+        // PSMs grouped by MS file and scan number, the MS files are numbered in the order they appear
+        List<String> fileIds = new ArrayList<>();
+        Map<String, Integer> fileOrdinalMap = new HashMap<>();
+        TopNSelector<PeptideSpectrumMatch> psmSelector = new TopNSelector<>(topN, ExportResultTask::rankScore,
+                result.size());
+        for (PeptideSpectrumMatch psm : result) {
+            String fileId = psm.getMsDataId().getId();
+            Integer ordinal = fileOrdinalMap.get(fileId);
+            if (ordinal == null) {
+                ordinal = fileIds.size();
+                fileOrdinalMap.put(fileId, ordinal);
+                fileIds.add(fileId);
+            }
+            ScanNumber scanNumber = psm.getScanNumber();
+            long key = scanNumber != null ? SpectrumKeyMap.scanKey(ordinal, scanNumber.getValue())
+                    : SpectrumKeyMap.indexKey(ordinal, psm.getIdentifier().getIndex());
+            psmSelector.offer(key, psm);
+        }
+        return new FileResult(file, msDataIds, fileIds, result.getParameters(), psmSelector);
+    }
+
+    /**
+     * Read the PSMs of a file passing the filter, the PSMs of a {@link BinaryResult} are filtered on the score columns
+     * before they are created, and a mzid file is prefiltered by {@link MzIdentFilter}.
+     */
+    private IdentResult read(File file, DelegateFilter<PeptideSpectrumMatch> filterList) throws IOException
+    {
+        if (prefilter && MzIdentFilter.isMzIdentML(file.toPath())) {
+            // drop the PSMs failing the score thresholds before they are parsed
+            MzIdentFilter mzIdentFilter = new MzIdentFilter()
+                    .atLeast(Score.RANK_SCORE, minRankScore)
+                    .atMost(Score.PSM_E_VALUE, maxEValue)
+                    .keepAtMost(PREFILTER_KEPT_RATIO);
+            Path dir = tempDirectory != null ? tempDirectory
+                    : Paths.get(targetFile).toAbsolutePath().getParent();
+            Path filtered = null;
+            try {
+                Files.createDirectories(dir);
+                filtered = Files.createTempFile(dir, "export_", ".mzid");
+            } catch (IOException e) {
+                // the directory is not writable, parse the file as it is
+            }
+            if (filtered != null) {
+                try {
+                    Path source = mzIdentFilter.filter(file.toPath(), filtered) ? filtered : file.toPath();
+                    IdentResult result = IdentResult.read(source, decoyTag);
+                    result.apply(filterList);
+                    return result;
+                } finally {
+                    Files.deleteIfExists(filtered);
+                }
+            }
+        }
+        if (!BinaryResult.isBinary(file.toPath())) {
+            IdentResult result = IdentResult.read(file.toPath(), decoyTag);
+            result.apply(filterList);
+            return result;
+        }
+
+        try (BinaryResult result = BinaryResult.open(file.toPath())) {
+            int rankColumn = result.scoreColumn(Score.RANK_SCORE);
+            int eValueColumn = result.scoreColumn(Score.PSM_E_VALUE);
+            return result.toIdentResult(row -> {
+                if (rankColumn >= 0 && result.getScore(rankColumn, row) < minRankScore)
+                    return false;
+                if (eValueColumn >= 0 && result.getScore(eValueColumn, row) > maxEValue)
+                    return false;
+                if (!onlyKeepDelta)
+                    return true;
+                String deltaName = result.getMeta("Delta Name", row);
+                return deltaName != null && StringUtils.isNotEmpty(deltaName.trim());
+            });
+        }
+    }
+
+    /**
+     * Top-N PSMs of each spectrum of a file, waiting to be merged.
+     */
+    private static final class FileResult
+    {
+        private final File file;
+        private final List<MsDataId> msDataIds;
+        private final List<String> fileIds;
+        private final IdentParameters parameters;
+        private final TopNSelector<PeptideSpectrumMatch> psmSelector;
+
+        FileResult(File file, List<MsDataId> msDataIds, List<String> fileIds, IdentParameters parameters,
+                TopNSelector<PeptideSpectrumMatch> psmSelector)
+        {
+            this.file = file;
+            this.msDataIds = msDataIds;
+            this.fileIds = fileIds;
+            this.parameters = parameters;
+            this.psmSelector = psmSelector;
+        }
+    }
+
+    private static int rankScore(PeptideSpectrumMatch psm)
+    {
+        return psm.getScoreInt(Score.RANK_SCORE);
+    }
+
+    /**
+     * Set the rank of the PSMs of a spectrum, ordered by rank score from high to low, PSMs with the same score share a
+     * rank.
+     */
+    private static void rank(List<PeptideSpectrumMatch> psmList)
     {
-        List<PeptideSpectrumMatch> resultList = new ArrayList<>(topN);
         int preScore = Integer.MIN_VALUE;
         int rank = 0;
-        for (int i = psmList.size() - 1; i >= 0; i--) {
-            PeptideSpectrumMatch psm = psmList.get(i);
-            Integer rawScore = psm.getScoreInt(Score.RANK_SCORE);
-            if (rawScore != preScore) {
+        for (PeptideSpectrumMatch psm : psmList) {
+            int rawScore = rankScore(psm);
+            if (rank == 0 || rawScore != preScore) {
                 rank++;
                 preScore = rawScore;
             }
-            if (rank > topN)
-                break;
             psm.setRank(rank);
-            resultList.add(psm);
         }
-        return resultList;
     }
 
 
@@ -219,30 +408,11 @@ public class ExportResultTask extends Task<Void>
                 .compareTrueFirst(reviewMap.get(o1.getAccession()), reviewMap.get(o2.getAccession()))
                 .compare(o1.getAccession(), o2.getAccession(), Ordering.natural()).result();
 
+        SameSetSelector<ProteinMatch, PeptideMatch> selector = new SameSetSelector<>(
+                ProteinMatch::getPeptideMatchList, comparator);
         Set<ProteinMatch> keptProteins = new HashSet<>();
         for (String s : proteinMap.keySet()) {
-            List<ProteinMatch> proteinMatches = proteinMap.get(s);
-            Set<ProteinMatch> retainedSet = new HashSet<>();
-            retainedSet.add(proteinMatches.get(0));
-
-            for (int i = 1; i < proteinMatches.size(); i++) {
-                ProteinMatch match2 = proteinMatches.get(i);
-                boolean foundEqual = false;
-                for (ProteinMatch match1 : retainedSet) {
-                    if (equal(match1, match2)) {
-                        foundEqual = true;
-                        int compare = comparator.compare(match1, match2);
-                        if (compare > 0) {
-                            retainedSet.add(match2);
-                            retainedSet.remove(match1);
-                        }
-                    }
-                }
-                if (!foundEqual) {
-                    retainedSet.add(match2);
-                }
-            }
-            keptProteins.addAll(retainedSet);
+            keptProteins.addAll(selector.select(proteinMap.get(s)));
         }
 
         for (PeptideMatch peptideMatch : identResult.getPeptideSet()) {
@@ -256,11 +426,4 @@ public class ExportResultTask extends Task<Void>
             peptideMatch.setPeptideProteinMatches(newSet);
         }
     }
-
-    private static boolean equal(ProteinMatch match1, ProteinMatch match2)
-    {
-        HashSet<PeptideMatch> set1 = new HashSet<>(match1.getPeptideMatchList());
-        HashSet<PeptideMatch> set2 = new HashSet<>(match2.getPeptideMatchList());
-        return set1.equals(set2);
-    }
 }
@@ -1,5 +1,6 @@
 package omics.gui.task;
 
+import javafx.application.Platform;
 import javafx.concurrent.Task;
 import omics.pdk.IdentResult;
 import omics.pdk.ident.*;
@@ -7,28 +8,38 @@ import omics.pdk.ident.util.SpectrumMatch2IdentResult;
 import omics.pdk.io.ResultFileType;
 import omics.pdk.task.SearchFastaTask;
 import omics.pdk.util.ThreadPoolExecutorWithProgress;
-import omics.util.io.FilenameUtils;
 import omics.util.protein.AminoAcidSet;
 import omics.util.protein.database.FastaSequence;
-import omics.util.protein.database.SuffixArraySequence;
-import omics.util.protein.database.SuffixIterator;
-import omics.util.protein.database.util.DoShuffleDB;
 import omics.util.protein.digest.Protease;
 import omics.util.utils.NumberFormatFactory;
 import omics.util.utils.SystemUtils;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Database search entry class, separate target and decoy search.
@@ -37,7 +48,7 @@ import java.util.concurrent.TimeUnit;
  * @version 1.0.1
  * @since 05 Oct 2019, 5:15 PM
  */
-public class FXSearchTask extends Task<Void>
+public class FXSearchTask extends ReportingTask<Void>
 {
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger(FXSearchTask.class);
 
@@ -56,13 +67,263 @@ public class FXSearchTask extends Task<Void>
 
     private SearchParameters parameters;
     //region generated fields
+    private PreparedDatabase database = null;
     private FastaSequence targetSequence = null;
     private FastaSequence decoySequence = null;
     private int[] targetLenCount = null;
     private int[] decoyLenCount = null;
-    private ThreadPoolExecutorWithProgress executor;
+    private volatile ThreadPoolExecutorWithProgress executor;
+    private volatile ExecutorService writeStage;
+    private AdmissionController admission;
+    private volatile SearchCoordinator coordinator;
+    private long databaseInitMillis;
+    private final Map<Path, long[]> readStatMap = new ConcurrentHashMap<>();
+    private final Map<Path, MassOrder> massOrderMap = new ConcurrentHashMap<>();
+    private volatile ExecutorService fileRunner;
+    private final Object fileLock = new Object();
+    private final AtomicInteger queuedChunks = new AtomicInteger();
+    private int runningFiles = 0;
+    private volatile Throwable fileFailure;
+    private final List<FileSearch> fileTaskList = new CopyOnWriteArrayList<>();
+    private final Map<Path, Double> fileProgressMap = new ConcurrentHashMap<>();
+    private int fileCount;
     //endregion
 
+    private boolean interleaveDecoy = false;
+
+    /**
+     * Set true to submit the target and decoy chunks of a file to the executor together, the result of each side is
+     * converted and written in a separate stage once its chunks are finished.
+     *
+     * @param interleaveDecoy true if search target and decoy interleaved.
+     */
+    public void setInterleaveDecoy(boolean interleaveDecoy)
+    {
+        this.interleaveDecoy = interleaveDecoy;
+    }
+
+    private int prefetchDepth = 0;
+    private long prefetchHeapBudget = Runtime.getRuntime().maxMemory() / 4;
+
+    /**
+     * Set the number of MS files read ahead on a background thread while current file is searched, 0 to read the
+     * files one by one.
+     *
+     * @param prefetchDepth number of files to read ahead.
+     */
+    public void setPrefetchDepth(int prefetchDepth)
+    {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * Set the max bytes of MS files read ahead, default to a quarter of the max heap.
+     *
+     * @param prefetchHeapBudget heap budget in bytes for files read ahead.
+     */
+    public void setPrefetchHeapBudget(long prefetchHeapBudget)
+    {
+        this.prefetchHeapBudget = prefetchHeapBudget;
+    }
+
+    private long searchHeapBudget = 0;
+
+    /**
+     * Set the max heap bytes of chunks running together, chunks wait for memory or are split to stay under it, default
+     * to three quarters of the heap not used after the database is prepared.
+     *
+     * @param searchHeapBudget heap budget in bytes of running chunks, 0 for default.
+     */
+    public void setSearchHeapBudget(long searchHeapBudget)
+    {
+        this.searchHeapBudget = searchHeapBudget;
+    }
+
+    private boolean memoryAdmission = false;
+
+    /**
+     * Set true to admit chunks by their estimated memory. The estimate is calibrated by the heap retained by a search
+     * of the first spectra of the first file, whose result is kept as the first chunk. Without it chunks are only
+     * split after one runs out of memory.
+     *
+     * @param memoryAdmission true to admit chunks by estimated memory.
+     */
+    public void setMemoryAdmission(boolean memoryAdmission)
+    {
+        this.memoryAdmission = memoryAdmission;
+    }
+
+    private boolean checkpoint = false;
+
+    /**
+     * Set true to spill the {@link SpectrumMatch}s of each finished chunk next to the output, so that a search
+     * restarted after a crash or cancel only searches the missing chunks. The search fails if the matches can not
+     * be serialized.
+     *
+     * @param checkpoint true to checkpoint the finished chunks.
+     */
+    public void setCheckpoint(boolean checkpoint)
+    {
+        this.checkpoint = checkpoint;
+    }
+
+    private int workerCount = 0;
+    private String workerHeap = null;
+
+    /**
+     * Set the number of worker processes on this host to search the chunks, each worker has its own heap and loads the
+     * database once, the threads of this task are shared by the workers. 0 to search in this process.
+     *
+     * @param workerCount number of worker processes.
+     */
+    public void setWorkerCount(int workerCount)
+    {
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Set the max heap of each worker process, such as "8G", default to the JVM default.
+     *
+     * @param workerHeap max heap of worker process.
+     */
+    public void setWorkerHeap(String workerHeap)
+    {
+        this.workerHeap = workerHeap;
+    }
+
+    private boolean massOrder = false;
+
+    /**
+     * Set true to search the spectra of each file in the order of precursor neutral mass, so that each chunk covers a
+     * narrow mass window of the database. The PSMs are written in the original scan order. Only MGF files are
+     * supported, the search fails on other formats.
+     *
+     * @param massOrder true to order spectra by precursor mass before chunking.
+     */
+    public void setMassOrder(boolean massOrder)
+    {
+        this.massOrder = massOrder;
+    }
+
+    private int concurrentFiles = 1;
+    private Consumer<Task<?>> fileTaskListener;
+
+    /**
+     * Set the max number of MS files searched at the same time. The next file is started once the chunks waiting in
+     * the executor are fewer than the threads, so that the tail of a small file does not leave the threads idle, all
+     * files share the database and the executor. 1 to search the files one by one.
+     *
+     * @param concurrentFiles max number of files searched at the same time.
+     */
+    public void setConcurrentFiles(int concurrentFiles)
+    {
+        this.concurrentFiles = concurrentFiles;
+    }
+
+    /**
+     * Set the listener of the task of each file when files are searched concurrently, such as to add it to a
+     * <code>TaskProgressView</code>. The listener is called on the JavaFX application thread.
+     *
+     * @param fileTaskListener listener of file tasks.
+     */
+    public void setFileTaskListener(Consumer<Task<?>> fileTaskListener)
+    {
+        this.fileTaskListener = fileTaskListener;
+    }
+
+    private int cancelUnit = 0;
+
+    /**
+     * Set the max number of spectra searched in this process between two checks of cancellation. A larger chunk is
+     * searched as consecutive sub-ranges, so that a cancelled search stops after the running sub-range instead of the
+     * whole chunk. Each sub-range scans the database again, a smaller unit stops sooner but searches slower.
+     *
+     * @param cancelUnit spectra between two checks of cancellation, 0 for half of the task unit.
+     */
+    public void setCancelUnit(int cancelUnit)
+    {
+        this.cancelUnit = cancelUnit;
+    }
+
+    private Path outputDirectory;
+    private ThreadPoolExecutorWithProgress sharedExecutor;
+    private SharedSpectra sharedSpectra;
+
+    /**
+     * Set the directory of the results, by default they are written next to the MS files.
+     *
+     * @param outputDirectory directory of the results
+     */
+    public void setOutputDirectory(Path outputDirectory)
+    {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Search the chunks on an executor shared with other searches, it is not shut down by this task.
+     *
+     * @param sharedExecutor shared executor
+     */
+    public void setSharedExecutor(ThreadPoolExecutorWithProgress sharedExecutor)
+    {
+        this.sharedExecutor = sharedExecutor;
+    }
+
+    /**
+     * Take the spectra of the MS files from a {@link SharedSpectra}, all its users must have the same
+     * {@link SpectrumSettings}. Spectra searched in mass order are not shared.
+     *
+     * @param sharedSpectra {@link SharedSpectra}
+     */
+    public void setSharedSpectra(SharedSpectra sharedSpectra)
+    {
+        this.sharedSpectra = sharedSpectra;
+    }
+
+    private boolean spectrumCache = false;
+
+    /**
+     * Set true to load the preprocessed spectra of a MS file from its {@link SpectrumCache}, the cache is written
+     * after the file is read the first time with the same spectrum settings.
+     *
+     * @param spectrumCache true to use the spectrum cache.
+     */
+    public void setSpectrumCache(boolean spectrumCache)
+    {
+        this.spectrumCache = spectrumCache;
+    }
+
+    private boolean binaryResult = false;
+    private String parameterText;
+
+    /**
+     * Set true to write the PSMs in {@link BinaryResult} format alongside the mzIdentML, the binary result is much
+     * faster to read by the export and the PSM viewer. The text of the parameter file is stored with the PSMs.
+     *
+     * @param binaryResult true to write binary result.
+     */
+    public void setBinaryResult(boolean binaryResult)
+    {
+        this.binaryResult = binaryResult;
+    }
+
+    private synchronized String parameterText() throws IOException
+    {
+        if (parameterText == null)
+            parameterText = new String(Files.readAllBytes(Paths.get(parameterFile)), StandardCharsets.UTF_8);
+        return parameterText;
+    }
+
+    private volatile List<SearchChunk> chunkList = Collections.emptyList();
+
+    /**
+     * @return {@link SearchChunk}s of the latest search, with their running time.
+     */
+    public List<SearchChunk> getChunkList()
+    {
+        return chunkList;
+    }
+
     private static final int TASK_UNIT = 500;
 
     @Override
@@ -77,139 +338,902 @@ public class FXSearchTask extends Task<Void>
         }
         initDatabase();
 
-        logger.info("Using {} threads", nrThread);
-        logger.info("Process {} scan per task", taskUnit);
-        executor = ThreadPoolExecutorWithProgress.newFixedThreadPool(nrThread);
+        MsFilePrefetcher prefetcher = null;
+        try {
+            checkCancelled();
+            logger.info("Using {} threads", nrThread);
+            logger.info("Process {} scan per task", taskUnit);
+            executor = sharedExecutor != null ? sharedExecutor : ThreadPoolExecutorWithProgress.newFixedThreadPool(nrThread);
+            if (interleaveDecoy && parameters.isSearchDecoy()) {
+                logger.info("Search target and decoy interleaved");
+                writeStage = Executors.newSingleThreadExecutor();
+            }
 
-        ThreadPoolExecutorWithProgress.ProgressReporter progressReporter = executor.progressReporter();
-        progressReporter.progressProperty().addListener(evt -> updateProgress((Double) evt.getNewValue(), 1.0));
-        progressReporter.messageProperty().addListener(evt -> logger.info((String) evt.getNewValue()));
+            admission = new AdmissionController(searchHeapBudget > 0 ? searchHeapBudget : AdmissionController.defaultHeapBudget(),
+                    nrThread, this::updateMessage);
+            if (workerCount > 0) {
+                updateMessage("Start " + workerCount + " search workers");
+                coordinator = new SearchCoordinator(parameterFile, workerCount, Math.max(1, nrThread / workerCount),
+                        concurrentFiles, workerHeap);
+                coordinator.start();
+            }
 
-        for (SearchIOPath searchIOPath : searchIOPathList) {
-            Path msFile = searchIOPath.getMSFile();
-            String spectrumFile = msFile.getFileName().toString();
-            logger.info("Processing " + spectrumFile);
-            updateTitle(spectrumFile);
+            ThreadPoolExecutorWithProgress.ProgressReporter progressReporter = executor.progressReporter();
+            progressReporter.messageProperty().addListener(evt -> logger.debug((String) evt.getNewValue()));
 
-            Path targetPath = searchIOPath.getTargetPath();
-            // Check the outputFile is valid for writing
-            Path parent = targetPath.getParent();
-            if (Files.notExists(parent)) {
-                try {
-                    Files.createDirectories(parent);
-                } catch (IOException e) {
-                    logger.error("The output directory {} is not exist, and create it failed.", parent);
-                    return null;
-                }
+            if (prefetchDepth > 0)
+                logger.info("Read {} MS files ahead", prefetchDepth);
+            prefetcher = new MsFilePrefetcher(searchIOPathList,
+                    searchIOPath -> readSpectrum(searchIOPath, prefetchDepth == 0 && concurrentFiles <= 1),
+                    prefetchDepth, prefetchHeapBudget);
+            fileCount = searchIOPathList.size();
+            if (concurrentFiles > 1 && fileCount > 1) {
+                logger.info("Search up to {} files concurrently", concurrentFiles);
+                fileRunner = Executors.newFixedThreadPool(concurrentFiles);
             }
+            List<Future<Void>> fileFutures = new ArrayList<>();
+            FileSearch previous = null;
+            for (SearchIOPath searchIOPath : searchIOPathList) {
+                checkCancelled();
+                Path msFile = searchIOPath.getMSFile();
+                String spectrumFile = msFile.getFileName().toString();
+                logger.info("Processing " + spectrumFile);
+                updateTitle(spectrumFile);
 
-            MsAccessor accessor = readSpectrum(searchIOPath);
-            if (accessor == null)
-                continue;
+                Path targetPath = targetPath(searchIOPath);
+                // Check the outputFile is valid for writing
+                Path parent = targetPath.getParent();
+                if (Files.notExists(parent)) {
+                    try {
+                        Files.createDirectories(parent);
+                    } catch (IOException e) {
+                        logger.error("The output directory {} is not exist, and create it failed.", parent);
+                        stop();
+                        return null;
+                    }
+                }
 
-            updateTitle("Search " + spectrumFile + " target");
-            logger.info("Searching target");
-            search(accessor, targetSequence, targetLenCount, targetPath);
+                MsAccessor accessor = prefetcher.take();
+                MassOrder order = massOrderMap.remove(msFile);
+                if (accessor == null) {
+                    if (order != null)
+                        order.delete();
+                    fileProgress(msFile, 1.0);
+                    continue;
+                }
+                checkCancelled();
 
-            if (parameters.isSearchDecoy()) {
-                logger.info("Searching decoy");
-                updateTitle("Search " + spectrumFile + " decoy");
-                search(accessor, decoySequence, decoyLenCount, searchIOPath.getDecoyPath());
+                FileSearch file = new FileSearch(searchIOPath, accessor, order);
+                if (fileRunner == null) {
+                    file.setReporter(new FileReporter(null));
+                    runFile(file);
+                    continue;
+                }
+                if (!awaitFileSlot(previous))
+                    break;
+                fileFutures.add(fileRunner.submit(() -> runConcurrent(file)));
+                previous = file;
+            }
+            awaitFiles(fileFutures);
+        } catch (RuntimeException | IOException e) {
+            stop();
+            if (isCancelled())
+                logger.info("Search cancelled");
+            throw e;
+        } finally {
+            if (prefetcher != null)
+                prefetcher.close();
+            // copies of files read ahead but not searched
+            for (MassOrder order : massOrderMap.values()) {
+                order.delete();
             }
+            massOrderMap.clear();
+            if (fileRunner != null)
+                fileRunner.shutdownNow();
+            closeCoordinator();
+            releaseDatabase();
         }
 
         double deltaTime = (System.currentTimeMillis() - time) / (double) 1000;
 
-        executor.shutdown();
-        try {
-            executor.awaitTerminationWithExceptions(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (Throwable throwable) {
-            if (executor.hasThrownData()) {
-                logger.error(throwable.getMessage());
+        if (writeStage != null)
+            writeStage.shutdown();
+        if (executor != sharedExecutor) {
+            executor.shutdown();
+            try {
+                executor.awaitTerminationWithExceptions(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (Throwable throwable) {
+                if (executor.hasThrownData()) {
+                    logger.error(throwable.getMessage());
+                    throwable.printStackTrace();
+                }
                 throwable.printStackTrace();
             }
-            throwable.printStackTrace();
         }
 
         logger.info(String.format("All searches complete (total elapsed time: %s)", omics.util.ms.TimeUnit.formatTime(deltaTime, NumberFormatFactory.DIGIT2)));
-        targetSequence.clear();
-        if (decoySequence != null)
-            decoySequence.clear();
         return null;
     }
 
-    private void search(MsAccessor accessor, FastaSequence fastaSequence, int[] len2Count, Path outPath)
+    /**
+     * Cancel the search, no more chunks are submitted, the queued chunks are dropped and the running chunks are
+     * interrupted, the database and spectra are released once the search thread returns.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled)
+            stop();
+        return cancelled;
+    }
+
+    /**
+     * Stop the executors, running chunks are interrupted.
+     */
+    private void stop()
+    {
+        closeCoordinator();
+        ThreadPoolExecutorWithProgress currentExecutor = executor;
+        if (currentExecutor != null && currentExecutor != sharedExecutor)
+            currentExecutor.shutdownNow();
+        ExecutorService currentWriteStage = writeStage;
+        if (currentWriteStage != null)
+            currentWriteStage.shutdownNow();
+        for (FileSearch file : fileTaskList) {
+            file.cancel(false);
+        }
+        synchronized (fileLock) {
+            fileLock.notifyAll();
+        }
+    }
+
+    /**
+     * Search a file on the search thread.
+     */
+    private void runFile(FileSearch file) throws IOException
+    {
+        try {
+            file.runHeadless();
+        } catch (RuntimeException | IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw abort(e);
+        }
+    }
+
+    /**
+     * Search a file on the file runner, as a task of its own in the progress view, or with its messages prefixed by
+     * the file name without JavaFX.
+     */
+    private Void runConcurrent(FileSearch file) throws Exception
+    {
+        try {
+            if (getReporter() != null) {
+                file.setReporter(new FileReporter(file.msFile.getFileName().toString()));
+                file.runHeadless();
+            } else {
+                fileTaskList.add(file);
+                if (fileTaskListener != null)
+                    Platform.runLater(() -> fileTaskListener.accept(file));
+                file.run();
+                try {
+                    file.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+            return null;
+        } catch (Throwable e) {
+            fileFailure = e;
+            stop();
+            throw e;
+        } finally {
+            fileTaskList.remove(file);
+            // the file task is not run if it is cancelled before start
+            file.submitted.countDown();
+            synchronized (fileLock) {
+                runningFiles--;
+                fileLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait until the previous file has submitted its chunks, a file slot is free and the chunks waiting in the
+     * executor are fewer than the threads.
+     *
+     * @return false if a file failed and no more file should be started.
+     */
+    private boolean awaitFileSlot(FileSearch previous)
+    {
+        try {
+            if (previous != null)
+                previous.submitted.await();
+            synchronized (fileLock) {
+                while (fileFailure == null && !isCancelled()
+                        && (runningFiles >= concurrentFiles || queuedChunks.get() >= nrThread)) {
+                    fileLock.wait();
+                }
+                checkCancelled();
+                if (fileFailure != null)
+                    return false;
+                runningFiles++;
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw abort(e);
+        }
+    }
+
+    /**
+     * Wait for the files searched concurrently, the first failure fails the search.
+     */
+    private void awaitFiles(List<Future<Void>> fileFutures) throws IOException
+    {
+        try {
+            for (Future<Void> future : fileFutures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw abort(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw abort(cause);
+        }
+    }
+
+    /**
+     * A chunk is taken by a thread, the next file may start if the executor is running out of chunks.
+     */
+    private void onChunkStarted()
+    {
+        if (queuedChunks.decrementAndGet() < nrThread && fileRunner != null) {
+            synchronized (fileLock) {
+                fileLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Update the progress of a file, the progress of the search is the average of the files.
+     */
+    private void fileProgress(Path msFile, double progress)
+    {
+        fileProgressMap.put(msFile, progress);
+        if (fileRunner == null)
+            return;
+        double sum = 0;
+        for (double value : fileProgressMap.values()) {
+            sum += value;
+        }
+        updateProgress(sum, fileCount);
+    }
+
+    /**
+     * Create the {@link SearchMetrics} of a MS file and publish it through JMX.
+     */
+    private SearchMetrics openMetrics(Path msFile)
+    {
+        SearchMetrics metrics = new SearchMetrics(msFile.getFileName().toString(), databaseInitMillis);
+        long[] readStat = readStatMap.remove(msFile);
+        if (readStat != null)
+            metrics.recordRead(readStat[0], readStat[1], readStat[2]);
+        metrics.register();
+        return metrics;
+    }
+
+    private void closeCoordinator()
+    {
+        SearchCoordinator currentCoordinator = coordinator;
+        if (currentCoordinator != null)
+            currentCoordinator.close();
+        coordinator = null;
+    }
+
+    private void checkCancelled()
+    {
+        if (isCancelled())
+            throw new CancellationException("Search cancelled");
+    }
+
+    /**
+     * Release the database and drop the references to it, so that the memory can be reclaimed while this task is
+     * still shown in the progress view.
+     */
+    private void releaseDatabase()
+    {
+        if (database != null)
+            database.release();
+        database = null;
+        targetSequence = null;
+        decoySequence = null;
+        targetLenCount = null;
+        decoyLenCount = null;
+    }
+
+    private void search(FileSearch file, FastaSequence fastaSequence, int[] len2Count, Path outPath, String passName)
     {
         long startTime = System.currentTimeMillis();
 
-        int numberOfScan = accessor.size();
+        double[] costs = SpectrumCost.estimate(file.accessor, targetLenCount);
+        SearchCheckpoint passCheckpoint = openCheckpoint(file, outPath, passName);
+        List<SearchChunk> chunks = planChunks(file, costs, passCheckpoint, fastaSequence == targetSequence);
+        chunkList = chunks;
+        file.passPlanned(chunks.size());
+        SearchPass pass = new SearchPass(file, fastaSequence, len2Count, outPath, chunks, passCheckpoint);
+        pass.submit();
+        file.submitted.countDown();
+        pass.finish("Search", startTime);
+    }
 
-        int numberOfTask;
-        if (numberOfScan <= taskUnit) {
-            numberOfTask = 1;
-        } else if ((numberOfScan % taskUnit) > (taskUnit / 2))
-            numberOfTask = numberOfScan / taskUnit + 1;
-        else
-            numberOfTask = numberOfScan / taskUnit;
+    /**
+     * Search target and decoy of a file in one executor queue, the decoy chunks are queued right behind the target
+     * chunks, so that the workers do not drain between the two passes. The conversion and writing of each side is
+     * performed on the <code>writeStage</code> as soon as all chunks of the side are finished.
+     *
+     * @param file {@link FileSearch} of the file
+     */
+    private void searchInterleaved(FileSearch file)
+    {
+        long startTime = System.currentTimeMillis();
+
+        SearchIOPath searchIOPath = file.searchIOPath;
+        double[] costs = SpectrumCost.estimate(file.accessor, targetLenCount);
+        SearchCheckpoint targetCheckpoint = openCheckpoint(file, targetPath(searchIOPath), "target");
+        SearchCheckpoint decoyCheckpoint = openCheckpoint(file, decoyPath(searchIOPath), "decoy");
+        List<SearchChunk> targetChunks = planChunks(file, costs, targetCheckpoint, true);
+        List<SearchChunk> decoyChunks = planChunks(file, costs, decoyCheckpoint, false);
+        List<SearchChunk> allChunks = new ArrayList<>(targetChunks);
+        allChunks.addAll(decoyChunks);
+        chunkList = allChunks;
+        file.passPlanned(targetChunks.size());
+        file.passPlanned(decoyChunks.size());
 
-        executor.setTaskCount(numberOfTask);
-        CountDownLatch countDownLatch = new CountDownLatch(numberOfTask);
+        SearchPass targetPass = new SearchPass(file, targetSequence, targetLenCount, targetPath(searchIOPath),
+                targetChunks, targetCheckpoint);
+        SearchPass decoyPass = new SearchPass(file, decoySequence, decoyLenCount, decoyPath(searchIOPath),
+                decoyChunks, decoyCheckpoint);
+        targetPass.submit();
+        decoyPass.submit();
+        file.submitted.countDown();
+
+        List<Future<?>> writeFutures = new ArrayList<>(2);
+        writeFutures.add(writeStage.submit(() -> targetPass.finish("Target", startTime)));
+        writeFutures.add(writeStage.submit(() -> decoyPass.finish("Decoy", startTime)));
 
-        List<SpectrumMatch> matchList = new ArrayList<>();
         try {
-            List<Future<List<SpectrumMatch>>> futures = new ArrayList<>(numberOfTask);
-            for (int i = 0; i < numberOfTask; i++) {
-                int startIndex = i * taskUnit;
-                int endIndex;
-                if (i == numberOfTask - 1)
-                    endIndex = numberOfScan;
-                else
-                    endIndex = (i + 1) * taskUnit;
-//                System.out.println(i + "\t" + startIndex + "\t" + endIndex);
-                SearchFastaTask task = new SearchFastaTask(accessor, startIndex, endIndex, parameters,
-                        fastaSequence, countDownLatch);
-                futures.add(executor.submit(task));
+            for (Future<?> future : writeFutures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw abort(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw abort(e);
+        }
+    }
+
+    /**
+     * Split the spectra into {@link SearchChunk}s of similar estimated cost, and under the heap budget. Chunks spilled
+     * to the checkpoint are kept as they are, the spectra between them are planned again. The sample searched to
+     * calibrate the memory estimate is the first chunk of the target pass.
+     */
+    private List<SearchChunk> planChunks(FileSearch file, double[] costs, SearchCheckpoint passCheckpoint,
+            boolean targetPass)
+    {
+        boolean restoring = passCheckpoint != null && !passCheckpoint.getCompletedRanges().isEmpty();
+        // memory is only admitted for chunks searched in this process
+        if (memoryAdmission && coordinator == null && targetPass && !restoring) {
+            synchronized (admission) {
+                if (!admission.isCalibrated())
+                    calibrate(file, costs);
             }
-            countDownLatch.await();
+        }
 
-            for (Future<List<SpectrumMatch>> future : futures) {
-                List<SpectrumMatch> matches = future.get();
-                matchList.addAll(matches);
+        List<SearchChunk> chunks = new ArrayList<>();
+        int start = 0;
+        int restored = 0;
+        if (targetPass && file.sampleMatches != null) {
+            double cost = 0;
+            for (int i = 0; i < file.sampleEnd; i++) {
+                cost += costs[i];
             }
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
-            executor.shutdownNow();
-            System.exit(1);
-        } catch (OutOfMemoryError ex) {
-            logger.error(ex.getMessage());
-            logger.error("Task terminated; results incomplete. Please run again with a greater amount of memory, using \"-Xmx12G\", for example.");
-            ex.printStackTrace();
-            executor.shutdownNow();
-            updateMessage("Out Of Memory");
-            System.exit(1);
-        } catch (Throwable ex) {
-            logger.error(ex.getMessage());
-            logger.error("Task terminated; results incomplete. Please run again.");
-            ex.printStackTrace();
-            executor.shutdownNow();
-            System.exit(1);
+            chunks.add(new SearchChunk(0, file.sampleEnd, cost));
+            start = file.sampleEnd;
+        } else if (passCheckpoint != null) {
+            for (int[] range : passCheckpoint.getCompletedRanges()) {
+                if (range[0] < start || range[1] > costs.length)
+                    continue;
+                chunks.addAll(planChunks(costs, start, range[0]));
+                double cost = 0;
+                for (int i = range[0]; i < range[1]; i++) {
+                    cost += costs[i];
+                }
+                chunks.add(new SearchChunk(range[0], range[1], cost));
+                start = range[1];
+                restored++;
+            }
+        }
+        chunks.addAll(planChunks(costs, start, costs.length));
+        if (restored > 0) {
+            String msg = String.format("Resume: %d of %d chunks restored from checkpoint", restored, chunks.size());
+            logger.info(msg);
+            file.updateMessage(msg);
+        }
+        return chunks;
+    }
+
+    private List<SearchChunk> planChunks(double[] costs, int start, int end)
+    {
+        if (start >= end)
+            return Collections.emptyList();
+        double[] rangeCosts = start == 0 && end == costs.length ? costs : Arrays.copyOfRange(costs, start, end);
+        List<SearchChunk> chunks = admission.admit(ChunkPlanner.plan(rangeCosts, taskUnit, nrThread), rangeCosts);
+        if (start == 0)
+            return chunks;
+        List<SearchChunk> shiftedList = new ArrayList<>(chunks.size());
+        for (SearchChunk chunk : chunks) {
+            shiftedList.add(new SearchChunk(chunk.getStartIndex() + start, chunk.getEndIndex() + start,
+                    chunk.getCost()));
+        }
+        return shiftedList;
+    }
+
+    /**
+     * Return the {@link SearchCheckpoint} of a pass, null if checkpoint is off or the fingerprint is not available.
+     */
+    private SearchCheckpoint openCheckpoint(FileSearch file, Path outPath, String passName)
+    {
+        if (!checkpoint)
+            return null;
+        try {
+            // the chunk ranges of the mass ordered copy are not those of the original file
+            String fingerprint = SearchCheckpoint.fingerprint(file.msFile, Paths.get(parameterFile), database.getKey(),
+                    file.order != null ? passName + "-mass-order" : passName);
+            return new SearchCheckpoint(outPath, fingerprint);
+        } catch (IOException e) {
+            logger.warn("Checkpoint of {} is not available: {}", file.msFile.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Calibrate the memory estimate with a search of the first spectra against the target database, the matches are
+     * kept in the {@link FileSearch} as the result of its first target chunk.
+     */
+    private void calibrate(FileSearch file, double[] costs)
+    {
+        int end = Math.min(AdmissionController.CALIBRATION_SIZE, costs.length);
+        double sampleCost = 0;
+        for (int i = 0; i < end; i++) {
+            sampleCost += costs[i];
+        }
+        updateMessage("Calibrate memory usage");
+        try {
+            file.sampleMatches = admission.calibrate(sampleCost, new SearchFastaTask(file.accessor, 0, end, parameters,
+                    targetSequence, new CountDownLatch(1)));
+            file.sampleEnd = end;
+        } catch (OutOfMemoryError e) {
+            admission.onOutOfMemory(end);
+        } catch (Exception e) {
+            throw abort(e);
+        }
+    }
+
+    /**
+     * Search of a MS file, with its own title, message and progress when files are searched concurrently.
+     */
+    private class FileSearch extends ReportingTask<Void>
+    {
+        private final SearchIOPath searchIOPath;
+        private final Path msFile;
+        private final MsAccessor accessor;
+        private final MassOrder order;
+        private final int passCount;
+        /**
+         * released once the chunks of the first pass are submitted.
+         */
+        private final CountDownLatch submitted = new CountDownLatch(1);
+        private final AtomicInteger finishedChunks = new AtomicInteger();
+        private int plannedChunks = 0;
+        private int plannedPasses = 0;
+        private SearchMetrics metrics;
+        /**
+         * matches of the target spectra in [0, sampleEnd) searched to calibrate the memory estimate.
+         */
+        private volatile List<SpectrumMatch> sampleMatches;
+        private int sampleEnd;
+
+        FileSearch(SearchIOPath searchIOPath, MsAccessor accessor, MassOrder order)
+        {
+            this.searchIOPath = searchIOPath;
+            this.msFile = searchIOPath.getMSFile();
+            this.accessor = accessor;
+            this.order = order;
+            this.passCount = parameters.isSearchDecoy() ? 2 : 1;
+        }
+
+        @Override
+        protected Void call()
+        {
+            String spectrumFile = msFile.getFileName().toString();
+            metrics = openMetrics(msFile);
+            try {
+                if (writeStage != null) {
+                    logger.info("Searching target and decoy");
+                    updateTitle("Search " + spectrumFile);
+                    searchInterleaved(this);
+                } else {
+                    updateTitle("Search " + spectrumFile + " target");
+                    logger.info("Searching target");
+                    search(this, targetSequence, targetLenCount, targetPath(searchIOPath), "target");
+
+                    if (parameters.isSearchDecoy()) {
+                        logger.info("Searching decoy");
+                        updateTitle("Search " + spectrumFile + " decoy");
+                        search(this, decoySequence, decoyLenCount, decoyPath(searchIOPath), "decoy");
+                    }
+                }
+                metrics.writeReport(targetPath(searchIOPath));
+                fileProgress(msFile, 1.0);
+            } finally {
+                submitted.countDown();
+                metrics.close();
+                if (order != null)
+                    order.delete();
+            }
+            return null;
+        }
+
+        synchronized void passPlanned(int chunkCount)
+        {
+            plannedChunks += chunkCount;
+            plannedPasses++;
+        }
+
+        /**
+         * A chunk of this file is finished, the passes not planned yet are assumed to have as many chunks as the
+         * planned ones.
+         */
+        void chunkFinished()
+        {
+            int finished = finishedChunks.incrementAndGet();
+            double total;
+            synchronized (this) {
+                total = (double) plannedChunks / plannedPasses * passCount;
+            }
+            double progress = Math.min(finished / total, 1.0);
+            updateProgress(progress, 1.0);
+            fileProgress(msFile, progress);
+        }
+    }
+
+    /**
+     * {@link TaskReporter} of a {@link FileSearch}, it forwards the updates to this task when the file is searched on
+     * the search thread, otherwise it forwards the title and messages prefixed with the file name.
+     */
+    private class FileReporter implements TaskReporter
+    {
+        private final String prefix;
+
+        /**
+         * @param prefix file name of concurrent file, null for the file searched on the search thread.
+         */
+        FileReporter(String prefix)
+        {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public void onTitle(String title)
+        {
+            if (prefix == null)
+                updateTitle(title);
+            else
+                updateMessage(title);
+        }
+
+        @Override
+        public void onMessage(String message)
+        {
+            updateMessage(prefix == null ? message : prefix + ": " + message);
+        }
+
+        @Override
+        public void onProgress(double progress)
+        {
+            if (prefix == null)
+                updateProgress(progress, 1.0);
+        }
+    }
+
+    /**
+     * Search of spectra in a file against one {@link FastaSequence}.
+     */
+    private class SearchPass
+    {
+        private final FileSearch file;
+        private final MsAccessor accessor;
+        private final Path msFile;
+        private final FastaSequence fastaSequence;
+        private final int[] len2Count;
+        private final Path outPath;
+        private final List<SearchChunk> chunks;
+        private final CountDownLatch countDownLatch;
+        private final List<Future<List<SpectrumMatch>>> futures;
+        // permits admitted for the matches waiting for conversion
+        private final Queue<Integer> heldPermits = new ConcurrentLinkedQueue<>();
+        private final SearchCheckpoint checkpoint;
+        private final SearchMetrics metrics;
+        private SearchMetrics.Stage searchStage;
+
+        SearchPass(FileSearch file, FastaSequence fastaSequence, int[] len2Count, Path outPath,
+                List<SearchChunk> chunks, SearchCheckpoint checkpoint)
+        {
+            this.file = file;
+            this.checkpoint = checkpoint;
+            this.accessor = file.accessor;
+            // workers read the file searched, which is the ordered copy in mass order
+            this.msFile = file.order != null ? file.order.getFile() : file.msFile;
+            this.metrics = file.metrics;
+            this.fastaSequence = fastaSequence;
+            this.len2Count = len2Count;
+            this.outPath = outPath;
+            this.chunks = chunks;
+            this.countDownLatch = new CountDownLatch(chunks.size());
+            this.futures = new ArrayList<>(chunks.size());
         }
 
-        logger.info("Writing result...");
-        updateMessage("Writing result");
+        /**
+         * Submit the chunks to the executor.
+         */
+        void submit()
+        {
+            searchStage = metrics.stage("search");
+            for (SearchChunk chunk : chunks) {
+                checkCancelled();
+                metrics.onChunkSubmitted();
+                queuedChunks.incrementAndGet();
+                Future<List<SpectrumMatch>> future = executor.submit(() -> {
+                    metrics.onChunkStarted();
+                    onChunkStarted();
+                    // chunks already taken by a worker when the search is cancelled
+                    if (isCancelled())
+                        return Collections.<SpectrumMatch>emptyList();
+                    chunk.start();
+                    try {
+                        return search(chunk);
+                    } finally {
+                        chunk.finish();
+                        metrics.onChunkFinished(chunk);
+                        file.chunkFinished();
+                    }
+                });
+                futures.add(future);
+            }
+        }
+
+        /**
+         * Search a chunk, or load it from the checkpoint if it is spilled by a previous run, the first target chunk of
+         * the calibrated file takes the matches of the calibration sample. With checkpoint the matches are spilled and
+         * null is returned, they are loaded again for conversion; otherwise the permits admitted for the chunk are held
+         * until the matches are converted.
+         */
+        private List<SpectrumMatch> search(SearchChunk chunk) throws Exception
+        {
+            int start = chunk.getStartIndex();
+            int end = chunk.getEndIndex();
+            if (checkpoint != null && checkpoint.contains(start, end)) {
+                List<SpectrumMatch> matchList = checkpoint.load(start, end);
+                if (matchList != null)
+                    return matchList;
+            }
+            List<SpectrumMatch> matchList = null;
+            if (start == 0 && fastaSequence == targetSequence && end == file.sampleEnd) {
+                matchList = file.sampleMatches;
+                file.sampleMatches = null;
+            }
+            List<Integer> held = new ArrayList<>();
+            try {
+                if (matchList == null)
+                    matchList = run(start, end, chunk.getCost(), countDownLatch, held);
+                if (checkpoint != null) {
+                    // a cancelled chunk may be partial, it must not be restored as complete
+                    checkCancelled();
+                    checkpoint.save(start, end, matchList);
+                    return null;
+                }
+                heldPermits.addAll(held);
+                held.clear();
+                return matchList;
+            } finally {
+                admission.release(held);
+            }
+        }
 
-        SpectrumMatch2IdentResult spectrumMatch2IdentResult = new SpectrumMatch2IdentResult(parameters, fastaSequence,
-                len2Count, accessor, matchList);
-        spectrumMatch2IdentResult.progressProperty().addListener(evt -> updateProgress((Double) evt.getNewValue(), 1.0));
-        spectrumMatch2IdentResult.go();
-        IdentResult result = spectrumMatch2IdentResult.getValue();
+        /**
+         * Search spectra in [start, end) on a worker process if workers are started, otherwise in this process as
+         * sub-ranges of at most the cancel unit, cancellation is checked between them and after the last one, so that a
+         * cancelled range fails instead of returning partial matches. If the workers fail, they are stopped and the
+         * remaining chunks are searched in this process.
+         */
+        private List<SpectrumMatch> run(int start, int end, double cost, CountDownLatch latch,
+                Collection<Integer> held) throws Exception
+        {
+            SearchCoordinator currentCoordinator = coordinator;
+            if (currentCoordinator != null) {
+                try {
+                    return currentCoordinator.search(msFile, fastaSequence == decoySequence, start, end);
+                } catch (IOException e) {
+                    checkCancelled();
+                    if (coordinator == currentCoordinator) {
+                        logger.warn("Search workers failed, search in this process: {}", e.getMessage());
+                        closeCoordinator();
+                    }
+                }
+            }
 
-        result.write(outPath.toAbsolutePath().toString(), ResultFileType.MzIdentML);
+            int unit = cancelUnit > 0 ? cancelUnit : Math.max(taskUnit / 2, 1);
+            List<SpectrumMatch> matchList;
+            if (end - start <= unit) {
+                matchList = runLocal(start, end, cost, latch, held);
+            } else {
+                matchList = new ArrayList<>();
+                for (int from = start; from < end; from += unit) {
+                    checkCancelled();
+                    int to = Math.min(from + unit, end);
+                    matchList.addAll(runLocal(from, to, cost * (to - from) / (end - start), new CountDownLatch(1),
+                            held));
+                }
+            }
+            // a sub-range stopped by the cancellation returns its matches so far
+            checkCancelled();
+            return matchList;
+        }
 
-        String info = "Finished in " + omics.util.ms.TimeUnit.formatTime(
-                (float) (System.currentTimeMillis() - startTime) / 1000, NumberFormatFactory.DIGIT2);
-        updateMessage(info);
-        logger.info(info);
+        /**
+         * Search spectra in [start, end) in this process once the memory is admitted, the range is searched again in
+         * halves if it runs out of memory.
+         */
+        private List<SpectrumMatch> runLocal(int start, int end, double cost, CountDownLatch latch,
+                Collection<Integer> held) throws Exception
+        {
+            try {
+                return admission.run(cost, new SearchFastaTask(accessor, start, end, parameters, fastaSequence, latch),
+                        held);
+            } catch (OutOfMemoryError e) {
+                if (end - start <= 1)
+                    throw e;
+                admission.onOutOfMemory(end - start);
+                int mid = (start + end) >>> 1;
+                List<SpectrumMatch> matchList = new ArrayList<>(runLocal(start, mid, cost / 2,
+                        new CountDownLatch(1), held));
+                matchList.addAll(runLocal(mid, end, cost / 2, new CountDownLatch(1), held));
+                return matchList;
+            }
+        }
+
+        /**
+         * Wait for the chunks, then convert and write the result.
+         */
+        void finish(String name, long startTime)
+        {
+            IdentResult result;
+            try {
+                List<SpectrumMatch> matchList;
+                try {
+                    matchList = collect();
+                } finally {
+                    searchStage.close();
+                }
+                logger.info("Writing result...");
+                file.updateMessage("Writing result");
+                try (SearchMetrics.Stage ignored = metrics.stage("convert")) {
+                    result = convert(matchList, true);
+                }
+            } finally {
+                admission.release(heldPermits);
+            }
+            logger.info("{} chunks: {}", name, SearchChunk.summarize(chunks));
+            try (SearchMetrics.Stage ignored = metrics.stage("write")) {
+                write(result, startTime);
+            }
+            if (checkpoint != null)
+                checkpoint.clear();
+        }
+
+        /**
+         * Wait for all chunks and gather their {@link SpectrumMatch}s, the spilled matches are loaded from the
+         * checkpoint.
+         */
+        private List<SpectrumMatch> collect()
+        {
+            List<SpectrumMatch> matchList = new ArrayList<>();
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    List<SpectrumMatch> matches = futures.get(i).get();
+                    if (matches == null) {
+                        SearchChunk chunk = chunks.get(i);
+                        matches = checkpoint.load(chunk.getStartIndex(), chunk.getEndIndex());
+                        if (matches == null)
+                            throw new IllegalStateException("Spilled matches of chunk " + chunk + " are not readable");
+                    }
+                    matchList.addAll(matches);
+                }
+            } catch (Throwable ex) {
+                throw abort(ex);
+            }
+            return matchList;
+        }
+
+        private IdentResult convert(List<SpectrumMatch> matchList, boolean showProgress)
+        {
+            long convertStart = System.currentTimeMillis();
+            SpectrumMatch2IdentResult spectrumMatch2IdentResult = new SpectrumMatch2IdentResult(parameters,
+                    fastaSequence, len2Count, accessor, matchList);
+            if (showProgress)
+                spectrumMatch2IdentResult.progressProperty().addListener(evt -> file.updateProgress((Double) evt.getNewValue(), 1.0));
+            spectrumMatch2IdentResult.go();
+            metrics.addConvertMillis(System.currentTimeMillis() - convertStart);
+            return spectrumMatch2IdentResult.getValue();
+        }
+
+        /**
+         * Write the {@link IdentResult} in mzIdentML, and in {@link BinaryResult} format next to it if enabled.
+         */
+        private void write(IdentResult result, long startTime)
+        {
+            long writeStart = System.currentTimeMillis();
+            if (file.order != null)
+                file.order.restore(result);
+            result.write(outPath.toAbsolutePath().toString(), ResultFileType.MzIdentML);
+            if (binaryResult) {
+                try {
+                    BinaryResult.write(result, parameterText(), BinaryResult.pathOf(outPath.toAbsolutePath()));
+                } catch (IOException e) {
+                    throw abort(e);
+                }
+            }
+            metrics.addWriteMillis(System.currentTimeMillis() - writeStart);
+
+            String info = "Finished in " + omics.util.ms.TimeUnit.formatTime(
+                    (float) (System.currentTimeMillis() - startTime) / 1000, NumberFormatFactory.DIGIT2);
+            file.updateMessage(info);
+            logger.info(info);
+        }
+    }
+
+    /**
+     * Stop the search after a chunk failed or the task is cancelled, the returned exception fails this task without
+     * exiting the application.
+     */
+    private RuntimeException abort(Throwable ex)
+    {
+        if (isCancelled()) {
+            stop();
+            return new CancellationException("Search cancelled");
+        }
+        Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+        stop();
+        if (cause instanceof OutOfMemoryError) {
+            logger.error(cause.getMessage());
+            logger.error("Task terminated; results incomplete. Please run again with a greater amount of memory, using \"-Xmx12G\", for example.");
+            updateMessage("Out Of Memory");
+        } else {
+            logger.error(cause.getMessage());
+            logger.error("Task terminated; results incomplete. Please run again.");
+            updateMessage("Task terminated: " + cause.getMessage());
+        }
+        return new IllegalStateException("Task terminated; results incomplete", cause);
     }
 
     private void checkArgument()
@@ -220,22 +1244,25 @@ public class FXSearchTask extends Task<Void>
             nrThread = coreCount;
         if (taskUnit < 0)
             taskUnit = TASK_UNIT;
+        if (massOrder) {
+            for (String msFile : msFiles) {
+                if (!MassOrder.isSupported(Paths.get(msFile)))
+                    throw new IllegalArgumentException("Mass order supports MGF files only: " + msFile);
+            }
+        }
     }
 
     private void initDatabase() throws IOException
     {
+        long startTime = System.currentTimeMillis();
         logger.info("Initialize database");
         updateTitle("Initialize database");
-        Path database = parameters.getDatabase();
-        Path targetDatabase = FilenameUtils.newExtension(database, IGD.TARGET_FASTA);
-        if (Files.notExists(targetDatabase)) {
-            Files.copy(database, targetDatabase);
-        }
-        updateMessage("Creating target database");
-        targetSequence = new FastaSequence(targetDatabase.toString());
+        updateMessage("Prepare database");
+        database = DatabaseRegistry.getInstance().acquire(parameters);
+        targetSequence = database.getTargetSequence();
+        targetLenCount = database.getTargetLength2Count();
         AminoAcidSet aaSet = parameters.getAminoAcidSet();
         aaSet.setAminoAcidProbabilities(targetSequence);
-        targetLenCount = getLength2CountArray(targetSequence);
         updateProgress(50, 100);
 
         Protease protease = parameters.getProtease();
@@ -246,50 +1273,77 @@ public class FXSearchTask extends Task<Void>
             aaSet.registerEnzyme(protease.getEnzyme());
         }
 
-        if (parameters.isSearchDecoy()) {
-            updateMessage("Creating decoy database");
-            Path decoyDatabase = FilenameUtils.newExtension(database, IGD.DECOY_FASTA);
-            if (Files.notExists(decoyDatabase)) {
-                DoShuffleDB shuffleDB = new DoShuffleDB(database, decoyDatabase, DoShuffleDB.DecoyType.REVERSE,
-                        false, DoShuffleDB.DECOY_PROTEIN_PREFIX, DoShuffleDB.TagPos.BEFORE_ACC);
-                shuffleDB.go();
-            }
-            decoySequence = new FastaSequence(decoyDatabase.toString());
-            this.decoyLenCount = getLength2CountArray(decoySequence);
+        if (database.hasDecoy()) {
+            decoySequence = database.getDecoySequence();
+            decoyLenCount = database.getDecoyLength2Count();
         }
+        databaseInitMillis = System.currentTimeMillis() - startTime;
         updateProgress(100, 100);
     }
 
-    private int[] getLength2CountArray(FastaSequence fastaSequence) throws IOException
+    /**
+     * Read spectra of a MS file.
+     *
+     * @param searchIOPath {@link SearchIOPath} of the MS file
+     * @param showProgress true to show the reading progress, false when the file is read in background
+     * @return {@link MsAccessor}, null if the file does not contain any valid spectrum.
+     */
+    private MsAccessor openAccessor(Path msFile, SearchIOPath searchIOPath, boolean showProgress) throws IOException
     {
-        SuffixIterator si = new SuffixIterator(new SuffixArraySequence(fastaSequence));
-        int maxPeptideLength = si.getMaxPeptideLength();
-        int[] count = new int[maxPeptideLength + 1];
-        if (parameters.getProtease().isUnspecific()) {
-            for (int i = 1; i <= maxPeptideLength; i++) {
-                count[i] = si.getPeptideCount(i);
-            }
-        } else {
-            for (int i = 1; i < maxPeptideLength; i++) {
-                count[i] = si.getPeptideCount(i + 1);
-            }
+        SpectrumCache cache = null;
+        if (spectrumCache) {
+            cache = SpectrumCache.of(msFile, parameters);
+            MsAccessor cached = cache.load(searchIOPath.getMSFileType(), parameters);
+            if (cached != null)
+                return cached;
         }
-        si.close();
+        MsAccessor specAcc = new MsAccessor(msFile, searchIOPath.getMSFileType(), parameters);
+        if (showProgress)
+            specAcc.progressProperty().addListener(evt -> updateProgress((Double) evt.getNewValue(), 1.0));
+        specAcc.go();
+        if (cache != null && specAcc.size() > 0)
+            cache.store(specAcc);
+        return specAcc;
+    }
 
-        return count;
+    /**
+     * @return path of the target result of a MS file, in the output directory if it is set.
+     */
+    private Path targetPath(SearchIOPath searchIOPath)
+    {
+        Path path = searchIOPath.getTargetPath();
+        return outputDirectory == null ? path : outputDirectory.resolve(path.getFileName());
     }
 
-    private MsAccessor readSpectrum(SearchIOPath searchIOPath) throws IOException
+    /**
+     * @return path of the decoy result of a MS file, in the output directory if it is set.
+     */
+    private Path decoyPath(SearchIOPath searchIOPath)
+    {
+        Path path = searchIOPath.getDecoyPath();
+        return outputDirectory == null ? path : outputDirectory.resolve(path.getFileName());
+    }
+
+    private MsAccessor readSpectrum(SearchIOPath searchIOPath, boolean showProgress) throws IOException
     {
         String msg = "Reading " + searchIOPath.getMSFile().getFileName();
-        updateMessage(msg);
+        if (showProgress)
+            updateMessage(msg);
         logger.info(msg);
         long startTime = System.currentTimeMillis();
 
         Path msFile = searchIOPath.getMSFile();
-        MsAccessor specAcc = new MsAccessor(msFile, searchIOPath.getMSFileType(), parameters);
-        specAcc.progressProperty().addListener(evt -> updateProgress((Double) evt.getNewValue(), 1.0));
-        specAcc.go();
+        MsAccessor specAcc;
+        if (massOrder) {
+            MassOrder order = MassOrder.write(msFile, targetPath(searchIOPath).getParent());
+            massOrderMap.put(msFile, order);
+            Path orderFile = order.getFile();
+            specAcc = openAccessor(orderFile, new SearchIOPath(orderFile), showProgress);
+        } else if (sharedSpectra != null) {
+            specAcc = sharedSpectra.take(msFile, () -> openAccessor(msFile, searchIOPath, showProgress));
+        } else {
+            specAcc = openAccessor(msFile, searchIOPath, showProgress);
+        }
 
         int specSize = specAcc.size();
         if (specSize == 0) {
@@ -300,8 +1354,10 @@ public class FXSearchTask extends Task<Void>
             return null;
         }
 
-        logger.info("Reading spectra finished " + String.format("(elapsed time: %.2f sec)",
-                (float) (System.currentTimeMillis() - startTime) / 1000));
+        long readMillis = System.currentTimeMillis() - startTime;
+        Runtime runtime = Runtime.getRuntime();
+        readStatMap.put(msFile, new long[]{specSize, readMillis, runtime.totalMemory() - runtime.freeMemory()});
+        logger.info("Reading spectra finished " + String.format("(elapsed time: %.2f sec)", (float) readMillis / 1000));
         return specAcc;
     }
 }
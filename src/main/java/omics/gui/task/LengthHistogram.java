@@ -0,0 +1,130 @@
+package omics.gui.task;
+
+import omics.util.protein.database.FastaSequence;
+import omics.util.protein.database.SuffixArraySequence;
+import omics.util.protein.database.SuffixIterator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Number of peptides of each length in a database, used to estimate the candidate count of a precursor mass.
+ * <p>
+ * The suffix array is built once and shared, the peptide lengths are partitioned across threads, each thread counts
+ * its lengths with its own {@link SuffixIterator}, and the counts are merged into one array.
+ *
+ * @version 1.0.0
+ */
+public final class LengthHistogram
+{
+    private LengthHistogram() { }
+
+    /**
+     * Return the number of peptides of each length, computed with all available processors.
+     *
+     * @param fastaSequence {@link FastaSequence}
+     * @param isUnspecific  true if the protease is unspecific
+     * @return length-to-count array
+     */
+    public static int[] compute(FastaSequence fastaSequence, boolean isUnspecific) throws IOException
+    {
+        return compute(fastaSequence, isUnspecific, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Return the number of peptides of each length.
+     *
+     * @param fastaSequence {@link FastaSequence}
+     * @param isUnspecific  true if the protease is unspecific
+     * @param nrThread      number of threads
+     * @return length-to-count array
+     */
+    public static int[] compute(FastaSequence fastaSequence, boolean isUnspecific, int nrThread) throws IOException
+    {
+        SuffixArraySequence suffixArray = new SuffixArraySequence(fastaSequence);
+        SuffixIterator si = new SuffixIterator(suffixArray);
+        int maxPeptideLength = si.getMaxPeptideLength();
+        si.close();
+
+        int[] count = new int[maxPeptideLength + 1];
+        // for specific protease, count[i] is the number of peptides of length i + 1
+        int first = 1;
+        int last = isUnspecific ? maxPeptideLength : maxPeptideLength - 1;
+        int offset = isUnspecific ? 0 : 1;
+        if (last < first)
+            return count;
+
+        int threads = Math.max(1, Math.min(nrThread, last - first + 1));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger nextLength = new AtomicInteger(first);
+        List<Future<int[]>> futureList = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            futureList.add(executor.submit(() -> {
+                int[] part = new int[count.length];
+                SuffixIterator iterator = new SuffixIterator(suffixArray);
+                try {
+                    int length;
+                    while ((length = nextLength.getAndIncrement()) <= last) {
+                        part[length] = iterator.getPeptideCount(length + offset);
+                    }
+                } finally {
+                    iterator.close();
+                }
+                return part;
+            }));
+        }
+
+        try {
+            for (Future<int[]> future : futureList) {
+                int[] part = future.get();
+                for (int i = first; i <= last; i++) {
+                    count[i] += part[i];
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return count;
+    }
+
+    /**
+     * Return the number of peptides of each length with one {@link SuffixIterator} on current thread, which is the
+     * reference of {@link #compute(FastaSequence, boolean, int)}.
+     *
+     * @param fastaSequence {@link FastaSequence}
+     * @param isUnspecific  true if the protease is unspecific
+     * @return length-to-count array
+     */
+    public static int[] computeSequential(FastaSequence fastaSequence, boolean isUnspecific) throws IOException
+    {
+        SuffixIterator si = new SuffixIterator(new SuffixArraySequence(fastaSequence));
+        int maxPeptideLength = si.getMaxPeptideLength();
+        int[] count = new int[maxPeptideLength + 1];
+        if (isUnspecific) {
+            for (int i = 1; i <= maxPeptideLength; i++) {
+                count[i] = si.getPeptideCount(i);
+            }
+        } else {
+            for (int i = 1; i < maxPeptideLength; i++) {
+                count[i] = si.getPeptideCount(i + 1);
+            }
+        }
+        si.close();
+
+        return count;
+    }
+}
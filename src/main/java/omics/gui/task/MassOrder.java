@@ -0,0 +1,191 @@
+package omics.gui.task;
+
+import omics.msdk.io.MgfWriter;
+import omics.msdk.model.MsDataFile;
+import omics.pdk.IdentResult;
+import omics.pdk.ident.model.Identifier;
+import omics.pdk.ident.model.PeptideSpectrumMatch;
+import omics.util.io.FilenameUtils;
+import omics.util.ms.MsDataId;
+import omics.util.ms.MsnSpectrum;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copy of a MS file with the spectra ordered by precursor neutral mass.
+ * <p>
+ * The chunks of a file are contiguous spectrum ranges, searching the ordered copy gives each chunk a narrow precursor
+ * mass window, so the candidate peptides of a chunk come from a small region of the database. The copy is written
+ * in MGF format to {@link #ORDER_DIR} next to the output with the name of the original file, so that the spectrum
+ * file id of the PSMs is not changed. {@link #restore(IdentResult)} maps the spectrum index of each PSM back to the
+ * original file through the stored permutation, points the spectra data to the original file and puts the PSMs back in
+ * the original spectrum order. Only MGF files are supported, the scan numbers and native ids of other formats are not
+ * kept by the MGF copy.
+ *
+ * @version 1.0.0
+ */
+public class MassOrder
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(MassOrder.class);
+
+    /**
+     * directory name of the ordered copies, created next to the output.
+     */
+    public static final String ORDER_DIR = ".omics_mass_order";
+
+    private final Path msFile;
+    private final Path file;
+    /**
+     * index in the original file of each spectrum of the copy
+     */
+    private final int[] order;
+
+    private MassOrder(Path msFile, Path file, int[] order)
+    {
+        this.msFile = msFile;
+        this.file = file;
+        this.order = order;
+    }
+
+    /**
+     * @param msFile MS file
+     * @return true if the MS file can be ordered by mass
+     */
+    public static boolean isSupported(Path msFile)
+    {
+        return msFile.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".mgf");
+    }
+
+    /**
+     * Write the spectra of a MS file ordered by precursor neutral mass.
+     *
+     * @param msFile MS file in MGF format
+     * @param outDir output directory of the search
+     * @return {@link MassOrder} of the file
+     * @throws IllegalArgumentException if the MS file is not in MGF format
+     */
+    public static MassOrder write(Path msFile, Path outDir) throws IOException
+    {
+        if (!isSupported(msFile))
+            throw new IllegalArgumentException("Mass order supports MGF files only: " + msFile.getFileName());
+        MsDataFile dataFile = MsDataFile.read(msFile.toString());
+        List<MsnSpectrum> spectrumList = dataFile.getSpectrumList();
+        int size = spectrumList.size();
+        double[] masses = new double[size];
+        for (int i = 0; i < size; i++) {
+            masses[i] = spectrumList.get(i).getPrecursor().getMass();
+        }
+        int[] order = order(masses);
+
+        Path dir = outDir.toAbsolutePath().resolve(ORDER_DIR);
+        Files.createDirectories(dir);
+        Path file = dir.resolve(FilenameUtils.removeExtension(msFile.getFileName().toString()) + ".mgf");
+        MgfWriter writer = new MgfWriter(file);
+        try {
+            for (int index : order) {
+                writer.writeSpectrum(spectrumList.get(index));
+            }
+        } finally {
+            writer.close();
+        }
+        logger.info("Ordered {} spectra of {} by precursor mass", size, msFile.getFileName());
+        return new MassOrder(msFile.toAbsolutePath(), file, order);
+    }
+
+    /**
+     * Return the spectrum indexes in ascending order of mass, spectra of the same mass keep their order.
+     *
+     * @param masses precursor neutral mass of each spectrum
+     * @return spectrum indexes ordered by mass.
+     */
+    static int[] order(double[] masses)
+    {
+        Integer[] indexes = new Integer[masses.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        Arrays.sort(indexes, Comparator.comparingDouble(i -> masses[i]));
+        int[] order = new int[indexes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = indexes[i];
+        }
+        return order;
+    }
+
+    /**
+     * @return the ordered copy in MGF format
+     */
+    public Path getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Map the PSMs of the ordered copy back to the original file: the spectrum index of each PSM is replaced by its
+     * index in the original file, the spectra data pointing to the copy are replaced by the original file, and the PSMs
+     * are sorted in the spectrum order of the original file. Titles and scan numbers are written to the copy as they
+     * are, so they need no mapping.
+     *
+     * @param result {@link IdentResult} of the ordered copy
+     */
+    public void restore(IdentResult result)
+    {
+        Map<MsDataId, MsDataId> idMap = new IdentityHashMap<>();
+        List<PeptideSpectrumMatch> psmList = result.getPSMList();
+        for (PeptideSpectrumMatch psm : psmList) {
+            Identifier identifier = psm.getIdentifier();
+            int index = identifier.getIndex();
+            if (index < 0 || index >= order.length)
+                throw new IllegalStateException("Spectrum index " + index + " is out of the ordered copy of "
+                        + msFile.getFileName());
+            identifier.setIndex(order[index]);
+
+            MsDataId msDataId = psm.getMsDataId();
+            if (msDataId != null)
+                psm.setMsDataId(idMap.computeIfAbsent(msDataId, this::original));
+        }
+        psmList.sort(Comparator.comparingInt(psm -> psm.getIdentifier().getIndex()));
+
+        Set<MsDataId> msDataIds = new HashSet<>();
+        for (MsDataId msDataId : result.getMsDataIds()) {
+            msDataIds.add(idMap.computeIfAbsent(msDataId, this::original));
+        }
+        result.getParameters().setMsDataIds(msDataIds);
+    }
+
+    /**
+     * @return spectra data of the original file for a spectra data of the copy.
+     */
+    private MsDataId original(MsDataId msDataId)
+    {
+        String name = msDataId.getName();
+        if (name == null)
+            return msDataId;
+        String originalName = name.replace(file.toString(), msFile.toString())
+                .replace(file.toUri().toString(), msFile.toUri().toString());
+        return originalName.equals(name) ? msDataId : new MsDataId(msDataId.getId(), originalName);
+    }
+
+    /**
+     * Delete the ordered copy.
+     */
+    public void delete()
+    {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package omics.gui.task;
+
+import omics.pdk.ident.MsAccessor;
+import omics.pdk.ident.SearchIOPath;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Read MS files ahead of the search on a background I/O thread.
+ * <p>
+ * The files are returned in the order of the given list. At most <code>depth</code> files are read ahead of the file
+ * being searched, and a file is only scheduled when the total size of the pending files stays under the heap budget,
+ * the file size is used as the estimation of the heap used by its {@link MsAccessor}.
+ *
+ * @version 1.0.0
+ */
+class MsFilePrefetcher implements AutoCloseable
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(MsFilePrefetcher.class);
+
+    /**
+     * Function to read a MS file, return null if the file should be skipped.
+     */
+    @FunctionalInterface
+    interface Reader
+    {
+        MsAccessor read(SearchIOPath searchIOPath) throws IOException;
+    }
+
+    private static class Pending
+    {
+        private final Future<MsAccessor> future;
+        private final long size;
+
+        Pending(Future<MsAccessor> future, long size)
+        {
+            this.future = future;
+            this.size = size;
+        }
+    }
+
+    private final List<SearchIOPath> searchIOPathList;
+    private final Reader reader;
+    private final int depth;
+    private final long heapBudget;
+    private final ExecutorService ioThread;
+    private final ArrayDeque<Pending> pendingQueue = new ArrayDeque<>();
+
+    private int nextIndex = 0;
+    private long pendingSize = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param searchIOPathList files to read
+     * @param reader           {@link Reader} to read each file
+     * @param depth            max number of files read ahead
+     * @param heapBudget       max estimated bytes of files read ahead
+     */
+    MsFilePrefetcher(List<SearchIOPath> searchIOPathList, Reader reader, int depth, long heapBudget)
+    {
+        this.searchIOPathList = searchIOPathList;
+        this.reader = reader;
+        this.depth = Math.max(depth, 0);
+        this.heapBudget = heapBudget;
+        this.ioThread = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ms-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Return the {@link MsAccessor} of the next file, and start reading the following files.
+     *
+     * @return {@link MsAccessor} of next file, null if the file is skipped.
+     */
+    MsAccessor take() throws IOException
+    {
+        if (pendingQueue.isEmpty())
+            schedule();
+
+        Pending pending = pendingQueue.poll();
+        if (pending == null)
+            throw new IllegalStateException("No more MS file");
+        pendingSize -= pending.size;
+        // read the following files while current file is searched
+        fill();
+
+        try {
+            return pending.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException)
+                throw ((UncheckedIOException) cause).getCause();
+            throw new IOException(cause);
+        }
+    }
+
+    private void fill()
+    {
+        while (nextIndex < searchIOPathList.size() && pendingQueue.size() < depth) {
+            long size = estimateSize(searchIOPathList.get(nextIndex));
+            if (pendingSize + size > heapBudget) {
+                logger.debug("Prefetch paused, heap budget {} reached", heapBudget);
+                break;
+            }
+            schedule();
+        }
+    }
+
+    private void schedule()
+    {
+        SearchIOPath searchIOPath = searchIOPathList.get(nextIndex++);
+        long size = estimateSize(searchIOPath);
+        Future<MsAccessor> future = ioThread.submit(() -> {
+            try {
+                return reader.read(searchIOPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        pendingQueue.add(new Pending(future, size));
+        pendingSize += size;
+    }
+
+    private static long estimateSize(SearchIOPath searchIOPath)
+    {
+        try {
+            return Files.size(searchIOPath.getMSFile());
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        for (Pending pending : pendingQueue) {
+            pending.future.cancel(true);
+        }
+        pendingQueue.clear();
+        ioThread.shutdownNow();
+    }
+}
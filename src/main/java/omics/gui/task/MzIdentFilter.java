@@ -0,0 +1,319 @@
+package omics.gui.task;
+
+import omics.pdk.ident.model.Score;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.*;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Drop the PSMs of a mzid file failing score thresholds before the file is parsed into an
+ * {@link omics.pdk.IdentResult}, so that the dropped PSMs and the peptides and proteins only they refer to are never
+ * created.
+ * <p>
+ * The file is streamed twice: the first pass tests the score parameters of each <code>SpectrumIdentificationItem</code>
+ * and collects the peptides, peptide evidences and sequences the passed items refer to, the second pass copies the
+ * file without the failed items, the emptied results and the unreferenced sequences. An item without a score is kept,
+ * the thresholds should be applied again on the parsed result.
+ * <p>
+ * Both passes read the whole file, so the filtered copy is only faster overall when the thresholds drop most PSMs,
+ * otherwise the passes add to the time of parsing the file.
+ *
+ * @version 1.0.0
+ */
+public class MzIdentFilter
+{
+    private static final String SII = "SpectrumIdentificationItem";
+    private static final String SIR = "SpectrumIdentificationResult";
+
+    private final Map<String, Threshold> thresholdMap = new HashMap<>();
+
+    private double maxKeptRatio = 1.0;
+    private int itemCount;
+    private int keptCount;
+
+    /**
+     * @return true if the file is a mzid file
+     */
+    public static boolean isMzIdentML(Path path)
+    {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".mzid");
+    }
+
+    /**
+     * Keep items with the score not less than the value.
+     */
+    public MzIdentFilter atLeast(Score score, double value)
+    {
+        return add(score, value, true);
+    }
+
+    /**
+     * Keep items with the score not larger than the value.
+     */
+    public MzIdentFilter atMost(Score score, double value)
+    {
+        return add(score, value, false);
+    }
+
+    /**
+     * Only write the filtered copy when at most the ratio of items pass, as the copy is not worth the second pass
+     * when the thresholds keep most items. 1 by default.
+     *
+     * @param maxKeptRatio max ratio of the passed items to all items
+     */
+    public MzIdentFilter keepAtMost(double maxKeptRatio)
+    {
+        this.maxKeptRatio = maxKeptRatio;
+        return this;
+    }
+
+    private MzIdentFilter add(Score score, double value, boolean atLeast)
+    {
+        // the score parameter is named by the score name or its display name
+        Threshold threshold = new Threshold(value, atLeast);
+        thresholdMap.put(score.name().toLowerCase(Locale.ROOT), threshold);
+        thresholdMap.put(score.toString().toLowerCase(Locale.ROOT), threshold);
+        return this;
+    }
+
+    /**
+     * @return number of items in the last filtered file
+     */
+    public int getItemCount()
+    {
+        return itemCount;
+    }
+
+    /**
+     * @return number of items kept in the last filtered file
+     */
+    public int getKeptCount()
+    {
+        return keptCount;
+    }
+
+    /**
+     * Write the items of the source file passing the thresholds to the target file.
+     *
+     * @param source mzid file
+     * @param target filtered file
+     * @return false if the target is not written, because all items passed, none passed or more than the ratio set by
+     * {@link #keepAtMost(double)} passed, the source file should be read as it is.
+     */
+    public boolean filter(Path source, Path target) throws IOException
+    {
+        try {
+            References references = scan(source);
+            if (keptCount == itemCount || keptCount == 0 || keptCount > maxKeptRatio * itemCount)
+                return false;
+            copy(source, target, references);
+            return true;
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to filter " + source + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * First pass, test each item and collect the references of the kept items.
+     */
+    private References scan(Path source) throws IOException, XMLStreamException
+    {
+        References references = new References();
+        Map<String, String> evidenceSequenceMap = new HashMap<>();
+        List<String> evidenceList = new ArrayList<>();
+        itemCount = 0;
+        keptCount = 0;
+
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        try (InputStream in = Files.newInputStream(source)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            int depth = 0;
+            int itemDepth = -1;
+            boolean pass = false;
+            boolean resultPass = false;
+            String peptideRef = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (name.equals("PeptideEvidence")) {
+                        // mzid 1.0 nests the evidences in the items
+                        if (itemDepth > 0)
+                            references.pruneSequences = false;
+                        evidenceSequenceMap.put(reader.getAttributeValue(null, "id"),
+                                reader.getAttributeValue(null, "dBSequence_ref"));
+                    } else if (name.equals("ProteinDetectionList")) {
+                        references.pruneSequences = false;
+                    } else if (name.equals(SIR)) {
+                        resultPass = false;
+                    } else if (name.equals(SII)) {
+                        itemDepth = depth;
+                        pass = true;
+                        peptideRef = reader.getAttributeValue(null, "peptide_ref");
+                        evidenceList.clear();
+                    } else if (itemDepth > 0 && depth == itemDepth + 1) {
+                        if (name.equals("cvParam") || name.equals("userParam")) {
+                            if (!test(reader.getAttributeValue(null, "name"), reader.getAttributeValue(null, "value")))
+                                pass = false;
+                        } else if (name.equals("PeptideEvidenceRef")) {
+                            evidenceList.add(reader.getAttributeValue(null, "peptideEvidence_ref"));
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                    String name = reader.getLocalName();
+                    if (name.equals(SII)) {
+                        itemDepth = -1;
+                        if (pass) {
+                            references.itemSet.set(itemCount);
+                            references.peptideSet.add(peptideRef);
+                            references.evidenceSet.addAll(evidenceList);
+                            keptCount++;
+                            resultPass = true;
+                        }
+                        itemCount++;
+                    } else if (name.equals(SIR)) {
+                        if (resultPass)
+                            references.resultSet.set(references.resultCount);
+                        references.resultCount++;
+                    }
+                }
+            }
+            reader.close();
+        }
+        for (String evidence : references.evidenceSet) {
+            references.sequenceSet.add(evidenceSequenceMap.get(evidence));
+        }
+        return references;
+    }
+
+    private boolean test(String name, String value)
+    {
+        if (name == null || value == null)
+            return true;
+        Threshold threshold = thresholdMap.get(name.toLowerCase(Locale.ROOT));
+        if (threshold == null)
+            return true;
+        double score;
+        try {
+            score = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return true;
+        }
+        if (Double.isNaN(score))
+            return true;
+        return threshold.atLeast ? score >= threshold.value : score <= threshold.value;
+    }
+
+    /**
+     * Second pass, copy the file without the dropped elements.
+     */
+    private void copy(Path source, Path target, References references) throws IOException, XMLStreamException
+    {
+        XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        XMLOutputFactory outputFactory = XMLOutputFactory.newFactory();
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = Files.newOutputStream(target)) {
+            XMLEventReader reader = inputFactory.createXMLEventReader(in);
+            XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+            int resultIndex = 0;
+            int itemIndex = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    StartElement element = event.asStartElement();
+                    String name = element.getName().getLocalPart();
+                    boolean keep = true;
+                    if (name.equals(SIR)) {
+                        keep = references.resultSet.get(resultIndex++);
+                        if (!keep)
+                            itemIndex += skip(reader, true);
+                    } else if (name.equals(SII)) {
+                        keep = references.itemSet.get(itemIndex++);
+                        if (!keep)
+                            skip(reader, false);
+                    } else if (references.pruneSequences) {
+                        if (name.equals("DBSequence"))
+                            keep = references.sequenceSet.contains(id(element));
+                        else if (name.equals("Peptide"))
+                            keep = references.peptideSet.contains(id(element));
+                        else if (name.equals("PeptideEvidence"))
+                            keep = references.evidenceSet.contains(id(element));
+                        if (!keep)
+                            skip(reader, false);
+                    }
+                    if (!keep)
+                        continue;
+                }
+                writer.add(event);
+            }
+            writer.flush();
+            writer.close();
+            reader.close();
+        }
+    }
+
+    /**
+     * Skip to the end of current element.
+     *
+     * @return number of items skipped if countItems is true
+     */
+    private static int skip(XMLEventReader reader, boolean countItems) throws XMLStreamException
+    {
+        int depth = 1;
+        int items = 0;
+        while (depth > 0) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+                if (countItems && event.asStartElement().getName().getLocalPart().equals(SII))
+                    items++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+        }
+        return items;
+    }
+
+    private static String id(StartElement element)
+    {
+        Attribute attribute = element.getAttributeByName(new QName("id"));
+        return attribute == null ? null : attribute.getValue();
+    }
+
+    private static final class Threshold
+    {
+        private final double value;
+        private final boolean atLeast;
+
+        Threshold(double value, boolean atLeast)
+        {
+            this.value = value;
+            this.atLeast = atLeast;
+        }
+    }
+
+    /**
+     * Elements kept by the first pass, the results and items by their order in the file.
+     */
+    private static final class References
+    {
+        private final BitSet resultSet = new BitSet();
+        private final BitSet itemSet = new BitSet();
+        private final Set<String> peptideSet = new HashSet<>();
+        private final Set<String> evidenceSet = new HashSet<>();
+        private final Set<String> sequenceSet = new HashSet<>();
+        private int resultCount;
+        private boolean pruneSequences = true;
+    }
+}
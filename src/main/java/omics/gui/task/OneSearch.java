@@ -1,6 +1,5 @@
 package omics.gui.task;
 
-import javafx.concurrent.Task;
 import omics.pdk.IdentResult;
 import omics.pdk.ident.MsAccessor;
 import omics.pdk.ident.SearchIOPath;
@@ -10,12 +9,8 @@ import omics.pdk.ident.util.SpectrumMatch2IdentResult;
 import omics.pdk.io.ResultFileType;
 import omics.pdk.task.SearchFastaTask;
 import omics.pdk.util.ThreadPoolExecutorWithProgress;
-import omics.util.io.FilenameUtils;
 import omics.util.protein.AminoAcidSet;
 import omics.util.protein.database.FastaSequence;
-import omics.util.protein.database.SuffixArraySequence;
-import omics.util.protein.database.SuffixIterator;
-import omics.util.protein.database.util.DoShuffleDB;
 import omics.util.protein.digest.Protease;
 import omics.util.utils.NumberFormatFactory;
 import org.slf4j.LoggerFactory;
@@ -32,8 +27,6 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
-import static omics.pdk.ident.SeparateMainSearch.DECOY_FASTA;
-
 /**
  * Database search entry class, separate target and decoy search.
  *
@@ -41,7 +34,7 @@ import static omics.pdk.ident.SeparateMainSearch.DECOY_FASTA;
  * @version 1.0.1
  * @since 05 Oct 2019, 5:15 PM
  */
-public class OneSearch extends Task<Void>
+public class OneSearch extends ReportingTask<Void>
 {
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger(OneSearch.class);
 
@@ -59,18 +52,31 @@ public class OneSearch extends Task<Void>
     }
 
     @Override
-    protected Void call() throws IOException
+    protected Void call() throws Exception
     {
         long time = System.currentTimeMillis();
         SearchIOPath searchIOPath = new SearchIOPath(msFile.toPath());
 
         initDatabase();
+        try {
+            search(searchIOPath);
+        } finally {
+            if (executor != null)
+                executor.shutdownNow();
+            database.release();
+        }
+        double deltaTime = (System.currentTimeMillis() - time) / (double) 1000;
+        logger.info(String.format("All searches complete (total elapsed time: %s)", omics.util.ms.TimeUnit.formatTime(deltaTime, NumberFormatFactory.DIGIT2)));
+        return null;
+    }
 
+    private void search(SearchIOPath searchIOPath) throws Exception
+    {
         executor = ThreadPoolExecutorWithProgress.newFixedThreadPool(nrThread);
 
         ThreadPoolExecutorWithProgress.ProgressReporter progressReporter = executor.progressReporter();
         progressReporter.progressProperty().addListener(evt -> updateProgress((Double) evt.getNewValue(), 1.0));
-        progressReporter.messageProperty().addListener(evt -> logger.info((String) evt.getNewValue()));
+        progressReporter.messageProperty().addListener(evt -> logger.debug((String) evt.getNewValue()));
 
         Path msFile = searchIOPath.getMSFile();
         logger.info(msFile.toString());
@@ -84,13 +90,13 @@ public class OneSearch extends Task<Void>
                 Files.createDirectories(parent);
             } catch (IOException e) {
                 logger.error("The output directory {} is not exist, and create it failed.", parent);
-                return null;
+                return;
             }
         }
 
         MsAccessor accessor = readSpectrum(searchIOPath);
         if (accessor == null)
-            return null;
+            return;
 
         updateTitle("Search Target");
         logger.info("Searching target");
@@ -101,8 +107,6 @@ public class OneSearch extends Task<Void>
             search(accessor, decoySequence, decoyLenCount, searchIOPath.getDecoyPath());
         }
 
-        double deltaTime = (System.currentTimeMillis() - time) / (double) 1000;
-
         executor.shutdown();
         try {
             executor.awaitTerminationWithExceptions(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
@@ -113,15 +117,10 @@ public class OneSearch extends Task<Void>
             }
             throwable.printStackTrace();
         }
-
-        logger.info(String.format("All searches complete (total elapsed time: %s)", omics.util.ms.TimeUnit.formatTime(deltaTime, NumberFormatFactory.DIGIT2)));
-        targetSequence.clear();
-        if (decoySequence != null)
-            decoySequence.clear();
-        return null;
     }
 
     //region generated fields
+    private PreparedDatabase database = null;
     private FastaSequence targetSequence = null;
     private FastaSequence decoySequence = null;
     private int[] targetLenCount = null;
@@ -130,35 +129,30 @@ public class OneSearch extends Task<Void>
     //endregion
 
     private void search(MsAccessor accessor, FastaSequence fastaSequence, int[] len2Count, Path outPath)
+            throws Exception
     {
         long startTime = System.currentTimeMillis();
 
-        int numberOfScan = accessor.size();
+        double[] costs = SpectrumCost.estimate(accessor, targetLenCount);
+        List<SearchChunk> chunks = ChunkPlanner.plan(costs, taskUnit, nrThread);
 
-        int numberOfTask;
-        if (numberOfScan <= taskUnit) {
-            numberOfTask = 1;
-        } else if ((numberOfScan % taskUnit) > (taskUnit / 2))
-            numberOfTask = numberOfScan / taskUnit + 1;
-        else
-            numberOfTask = numberOfScan / taskUnit;
-
-        executor.setTaskCount(numberOfTask);
-        CountDownLatch countDownLatch = new CountDownLatch(numberOfTask);
+        executor.setTaskCount(chunks.size());
+        CountDownLatch countDownLatch = new CountDownLatch(chunks.size());
 
         List<SpectrumMatch> matchList = new ArrayList<>();
         try {
-            List<Future<List<SpectrumMatch>>> futures = new ArrayList<>(numberOfTask);
-            for (int i = 0; i < numberOfTask; i++) {
-                int startIndex = i * taskUnit;
-                int endIndex;
-                if (i == numberOfTask - 1)
-                    endIndex = numberOfScan;
-                else
-                    endIndex = (i + 1) * taskUnit;
-                SearchFastaTask task = new SearchFastaTask(accessor, startIndex, endIndex, parameters,
-                        fastaSequence, countDownLatch);
-                futures.add(executor.submit(task));
+            List<Future<List<SpectrumMatch>>> futures = new ArrayList<>(chunks.size());
+            for (SearchChunk chunk : chunks) {
+                SearchFastaTask task = new SearchFastaTask(accessor, chunk.getStartIndex(), chunk.getEndIndex(),
+                        parameters, fastaSequence, countDownLatch);
+                futures.add(executor.submit(() -> {
+                    chunk.start();
+                    try {
+                        return task.call();
+                    } finally {
+                        chunk.finish();
+                    }
+                }));
             }
             countDownLatch.await();
 
@@ -166,23 +160,22 @@ public class OneSearch extends Task<Void>
                 List<SpectrumMatch> matches = future.get();
                 matchList.addAll(matches);
             }
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+            logger.info("Search chunks: {}", SearchChunk.summarize(chunks));
+        } catch (InterruptedException e) {
             executor.shutdownNow();
-            System.exit(1);
-        } catch (OutOfMemoryError ex) {
-            logger.error(ex.getMessage());
-            logger.error("Task terminated; results incomplete. Please run again with a greater amount of memory, using \"-Xmx12G\", for example.");
-            ex.printStackTrace();
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            // fail the task with the error of the chunk, such as OutOfMemoryError
             executor.shutdownNow();
-            updateMessage("Out Of Memory");
-            System.exit(1);
-        } catch (Throwable ex) {
-            logger.error(ex.getMessage());
-            logger.error("Task terminated; results incomplete. Please run again.");
-            ex.printStackTrace();
+            Throwable cause = e.getCause();
+            logger.error("Task terminated; results incomplete. Please run again.", cause);
+            if (cause instanceof OutOfMemoryError)
+                throw outOfMemory((OutOfMemoryError) cause);
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } catch (OutOfMemoryError ex) {
             executor.shutdownNow();
-            System.exit(1);
+            throw outOfMemory(ex);
         }
 
         logger.info("Writing result...");
@@ -202,17 +195,23 @@ public class OneSearch extends Task<Void>
         logger.info(info);
     }
 
+    /**
+     * Fail the task on OutOfMemoryError with a hint on the heap to use, instead of exiting the JVM.
+     */
+    private IllegalStateException outOfMemory(OutOfMemoryError error)
+    {
+        logger.error("Task terminated; results incomplete. Please run again with a greater amount of memory, using \"-Xmx12G\", for example.");
+        updateMessage("Out Of Memory");
+        return new IllegalStateException("Out of memory, please run again with a larger heap, such as -Xmx12G", error);
+    }
+
     private void initDatabase() throws IOException
     {
-        Path database = parameters.getDatabase();
-        Path targetDatabase = FilenameUtils.newExtension(database, DoShuffleDB.TARGET_DB_EXT);
-        if (Files.notExists(targetDatabase)) {
-            Files.copy(database, targetDatabase);
-        }
-        targetSequence = new FastaSequence(targetDatabase.toString());
+        database = DatabaseRegistry.getInstance().acquire(parameters);
+        targetSequence = database.getTargetSequence();
+        targetLenCount = database.getTargetLength2Count();
         AminoAcidSet aaSet = parameters.getAminoAcidSet();
         aaSet.setAminoAcidProbabilities(targetSequence);
-        targetLenCount = getLength2CountArray(targetSequence);
 
         Protease protease = parameters.getProtease();
         Optional<Protease> secondProtease = parameters.getSecondProtease();
@@ -222,37 +221,12 @@ public class OneSearch extends Task<Void>
             aaSet.registerEnzyme(protease.getEnzyme());
         }
 
-        if (parameters.isSearchDecoy()) {
-            Path decoyDatabase = FilenameUtils.newExtension(database, DECOY_FASTA);
-            if (Files.notExists(decoyDatabase)) {
-                DoShuffleDB shuffleDB = new DoShuffleDB(database, decoyDatabase, DoShuffleDB.DecoyType.REVERSE,
-                        false, DoShuffleDB.DECOY_PROTEIN_PREFIX, DoShuffleDB.TagPos.BEFORE_ACC);
-                shuffleDB.go();
-            }
-            decoySequence = new FastaSequence(decoyDatabase.toString());
-            this.decoyLenCount = getLength2CountArray(decoySequence);
+        if (database.hasDecoy()) {
+            decoySequence = database.getDecoySequence();
+            decoyLenCount = database.getDecoyLength2Count();
         }
     }
 
-    private int[] getLength2CountArray(FastaSequence fastaSequence) throws IOException
-    {
-        SuffixIterator si = new SuffixIterator(new SuffixArraySequence(fastaSequence));
-        int maxPeptideLength = si.getMaxPeptideLength();
-        int[] count = new int[maxPeptideLength + 1];
-        if (parameters.getProtease().isUnspecific()) {
-            for (int i = 1; i <= maxPeptideLength; i++) {
-                count[i] = si.getPeptideCount(i);
-            }
-        } else {
-            for (int i = 1; i < maxPeptideLength; i++) {
-                count[i] = si.getPeptideCount(i + 1);
-            }
-        }
-        si.close();
-
-        return count;
-    }
-
     private MsAccessor readSpectrum(SearchIOPath searchIOPath) throws IOException
     {
         String msg = "Reading spectra";
@@ -0,0 +1,131 @@
+package omics.gui.task;
+
+import omics.util.protein.database.FastaSequence;
+
+/**
+ * Target and decoy databases prepared for search, shared by search tasks through {@link DatabaseRegistry}.
+ * <p>
+ * Instances are read only, the {@link FastaSequence}s must not be cleared by the users, call {@link #release()} when
+ * the database is no longer used.
+ *
+ * @version 1.0.0
+ */
+public final class PreparedDatabase
+{
+    private final String key;
+    private final FastaSequence targetSequence;
+    private final FastaSequence decoySequence;
+    private final int[] targetLength2Count;
+    private final int[] decoyLength2Count;
+    private final long estimatedBytes;
+
+    private DatabaseRegistry registry;
+    private int refCount = 0;
+
+    PreparedDatabase(String key, FastaSequence targetSequence, int[] targetLength2Count,
+            FastaSequence decoySequence, int[] decoyLength2Count, long estimatedBytes)
+    {
+        this.key = key;
+        this.targetSequence = targetSequence;
+        this.targetLength2Count = targetLength2Count;
+        this.decoySequence = decoySequence;
+        this.decoyLength2Count = decoyLength2Count;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * @return key of this database in the {@link DatabaseRegistry}
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @return target {@link FastaSequence}
+     */
+    public FastaSequence getTargetSequence()
+    {
+        return targetSequence;
+    }
+
+    /**
+     * @return decoy {@link FastaSequence}, null if the decoy database is not prepared
+     */
+    public FastaSequence getDecoySequence()
+    {
+        return decoySequence;
+    }
+
+    /**
+     * @return copy of the number of target peptides of each length
+     */
+    public int[] getTargetLength2Count()
+    {
+        return targetLength2Count.clone();
+    }
+
+    /**
+     * @return copy of the number of decoy peptides of each length, null if the decoy database is not prepared
+     */
+    public int[] getDecoyLength2Count()
+    {
+        return decoyLength2Count == null ? null : decoyLength2Count.clone();
+    }
+
+    /**
+     * @return true if the decoy database is prepared
+     */
+    public boolean hasDecoy()
+    {
+        return decoySequence != null;
+    }
+
+    /**
+     * @return estimated heap used by this database in bytes
+     */
+    public long getEstimatedBytes()
+    {
+        return estimatedBytes;
+    }
+
+    /**
+     * Release this database, it may be evicted once it is released by all users.
+     */
+    public void release()
+    {
+        if (registry != null)
+            registry.release(this);
+    }
+
+    void setRegistry(DatabaseRegistry registry)
+    {
+        this.registry = registry;
+    }
+
+    int getRefCount()
+    {
+        return refCount;
+    }
+
+    void retain()
+    {
+        refCount++;
+    }
+
+    void unretain()
+    {
+        if (refCount > 0)
+            refCount--;
+    }
+
+    /**
+     * Free the sequences, called by {@link DatabaseRegistry} on eviction.
+     */
+    void dispose()
+    {
+        targetSequence.clear();
+        if (decoySequence != null)
+            decoySequence.clear();
+    }
+}
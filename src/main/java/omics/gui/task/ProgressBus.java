@@ -0,0 +1,253 @@
+package omics.gui.task;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesce the progress updates of tasks and push them to their {@link TaskReporter} at a fixed frame rate.
+ * <p>
+ * Producers only write the latest value of a {@link Channel} and mark it dirty, which is lock free, so that thousands
+ * of chunk and pdk progress events cost no more than a volatile write each. A single daemon thread publishes the dirty
+ * channels every {@link #FRAME_MILLIS} milliseconds, intermediate values are dropped. Each channel also keeps a
+ * smoothed throughput and the estimated time to finish.
+ *
+ * @version 1.0.0
+ */
+public class ProgressBus
+{
+    /**
+     * interval between two pushes of a channel.
+     */
+    public static final long FRAME_MILLIS = 100;
+
+    private static final ProgressBus INSTANCE = new ProgressBus();
+
+    private final Set<Channel> channelSet = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+
+    private ProgressBus()
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "progress-bus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::publish, FRAME_MILLIS, FRAME_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the shared {@link ProgressBus}.
+     */
+    public static ProgressBus getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Open a channel whose updates are pushed to the sink, until it is closed.
+     *
+     * @param sink {@link TaskReporter} receiving the coalesced updates
+     * @return {@link Channel}
+     */
+    public Channel open(TaskReporter sink)
+    {
+        Channel channel = new Channel(sink);
+        channelSet.add(channel);
+        return channel;
+    }
+
+    private void publish()
+    {
+        for (Channel channel : channelSet) {
+            try {
+                channel.publish();
+            } catch (RuntimeException ignored) {
+                // a failing sink must not stop the other channels
+            }
+        }
+    }
+
+    /**
+     * Latest title, message and progress of a task.
+     */
+    public final class Channel
+    {
+        private static final int MESSAGE = 1;
+        private static final int PROGRESS = 2;
+        /**
+         * min time between two samples of the throughput.
+         */
+        private static final long SAMPLE_NANOS = 1_000_000_000L;
+        /**
+         * weight of the latest sample in the smoothed throughput.
+         */
+        private static final double ALPHA = 0.3;
+
+        private final TaskReporter sink;
+        private final AtomicInteger dirty = new AtomicInteger();
+        private volatile String message;
+        private volatile Progress progress = new Progress(-1, 1);
+
+        // accessed by the publishing threads only
+        private Progress sampleProgress;
+        private long sampleNanos;
+        private volatile double throughput = -1;
+        private volatile long etaMillis = -1;
+        private volatile boolean closed = false;
+
+        private Channel(TaskReporter sink)
+        {
+            this.sink = sink;
+        }
+
+        /**
+         * Set the title, it starts a new stage, so the pending updates are pushed first and the title is pushed
+         * immediately.
+         */
+        public void title(String title)
+        {
+            if (closed)
+                return;
+            publish();
+            sink.onTitle(title);
+        }
+
+        public void message(String message)
+        {
+            if (closed)
+                return;
+            this.message = message;
+            mark(MESSAGE);
+        }
+
+        /**
+         * @param workDone work done, negative for indeterminate
+         * @param max      total work
+         */
+        public void progress(double workDone, double max)
+        {
+            if (closed)
+                return;
+            this.progress = new Progress(workDone, max);
+            mark(PROGRESS);
+        }
+
+        private void mark(int bit)
+        {
+            int current = dirty.get();
+            if ((current & bit) == 0)
+                dirty.getAndUpdate(value -> value | bit);
+        }
+
+        /**
+         * Push the pending updates to the sink.
+         */
+        synchronized void publish()
+        {
+            int bits = dirty.getAndSet(0);
+            if ((bits & MESSAGE) != 0)
+                sink.onMessage(message);
+            if ((bits & PROGRESS) != 0) {
+                Progress current = progress;
+                sample(current);
+                if (etaMillis >= 0)
+                    sink.onEstimate(throughput, etaMillis);
+                sink.onProgress(current.fraction());
+            }
+        }
+
+        private void sample(Progress current)
+        {
+            long now = System.nanoTime();
+            if (current.workDone < 0 || sampleProgress == null || current.workDone < sampleProgress.workDone
+                    || current.max != sampleProgress.max) {
+                // a new stage, restart the estimate
+                sampleProgress = current;
+                sampleNanos = now;
+                throughput = -1;
+                etaMillis = -1;
+                return;
+            }
+            long elapsed = now - sampleNanos;
+            if (elapsed < SAMPLE_NANOS)
+                return;
+            double rate = (current.workDone - sampleProgress.workDone) * 1e9 / elapsed;
+            double smoothed = throughput < 0 ? rate : ALPHA * rate + (1 - ALPHA) * throughput;
+            throughput = smoothed;
+            etaMillis = smoothed > 0 ? (long) ((current.max - current.workDone) / smoothed * 1000) : -1;
+            sampleProgress = current;
+            sampleNanos = now;
+        }
+
+        /**
+         * @return smoothed work done per second, -1 if unknown
+         */
+        public double getThroughput()
+        {
+            return throughput;
+        }
+
+        /**
+         * @return estimated milliseconds to finish current stage, -1 if unknown
+         */
+        public long getEtaMillis()
+        {
+            return etaMillis;
+        }
+
+        /**
+         * Push the pending updates and stop publishing this channel, later updates are ignored.
+         */
+        public void close()
+        {
+            closed = true;
+            channelSet.remove(this);
+            publish();
+        }
+
+        /**
+         * @return true if the channel is closed
+         */
+        public boolean isClosed()
+        {
+            return closed;
+        }
+    }
+
+    /**
+     * Format a duration as h:mm:ss or m:ss.
+     *
+     * @param millis duration in milliseconds
+     * @return formatted duration.
+     */
+    public static String formatDuration(long millis)
+    {
+        long seconds = millis / 1000;
+        long hours = seconds / 3600;
+        long minutes = seconds / 60 % 60;
+        if (hours > 0)
+            return String.format("%d:%02d:%02d", hours, minutes, seconds % 60);
+        return String.format("%d:%02d", minutes, seconds % 60);
+    }
+
+    private static final class Progress
+    {
+        private final double workDone;
+        private final double max;
+
+        Progress(double workDone, double max)
+        {
+            this.workDone = workDone;
+            this.max = max;
+        }
+
+        double fraction()
+        {
+            return max > 0 && workDone >= 0 ? Math.min(workDone / max, 1.0) : -1;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package omics.gui.task;
+
+import omics.pdk.IdentResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Read a {@link BinaryResult} file to {@link IdentResult}.
+ *
+ * @version 1.0.0
+ */
+public class ReadBinaryResultTask extends ReportingTask<IdentResult>
+{
+    private final Path file;
+
+    public ReadBinaryResultTask(Path file)
+    {
+        this.file = file;
+    }
+
+    @Override
+    protected IdentResult call() throws IOException
+    {
+        updateTitle("Reading " + file.getFileName());
+        updateProgress(-1, 1);
+        try (BinaryResult result = BinaryResult.open(file)) {
+            updateMessage(result.size() + " PSMs");
+            IdentResult identResult = result.toIdentResult();
+            updateProgress(1, 1);
+            return identResult;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package omics.gui.task;
+
+import javafx.concurrent.Task;
+
+/**
+ * {@link Task} which can also run without the JavaFX toolkit.
+ * <p>
+ * The title, message and progress updates are coalesced by a {@link ProgressBus} channel, so that a task may update
+ * as often as it likes. When a {@link TaskReporter} is set, the coalesced updates are passed to it instead of the FX
+ * properties, and {@link #runHeadless()} runs the task on current thread without touching the FX task state. Once the
+ * throughput of a stage is known, the FX message shows the estimated time to finish it while the stage is in
+ * progress. Updates after the task is done are ignored.
+ *
+ * @version 1.0.0
+ */
+public abstract class ReportingTask<V> extends Task<V>
+{
+    private volatile TaskReporter reporter;
+    private ProgressBus.Channel channel;
+
+    /**
+     * @param reporter {@link TaskReporter} to receive the updates, null to update the FX properties.
+     */
+    public void setReporter(TaskReporter reporter)
+    {
+        this.reporter = reporter;
+    }
+
+    /**
+     * @return the {@link TaskReporter}, null if updates go to the FX properties.
+     */
+    public TaskReporter getReporter()
+    {
+        return reporter;
+    }
+
+    /**
+     * Run the task on current thread without the JavaFX toolkit, a {@link TaskReporter} must be set.
+     *
+     * @return value of the task
+     */
+    public V runHeadless() throws Exception
+    {
+        if (reporter == null)
+            throw new IllegalStateException("A TaskReporter is required to run without JavaFX");
+        try {
+            return call();
+        } finally {
+            closeChannel();
+        }
+    }
+
+    /**
+     * @return smoothed work done per second of current stage, -1 if unknown
+     */
+    public double getThroughput()
+    {
+        return channel().getThroughput();
+    }
+
+    /**
+     * @return estimated milliseconds to finish current stage, -1 if unknown
+     */
+    public long getEtaMillis()
+    {
+        return channel().getEtaMillis();
+    }
+
+    private synchronized ProgressBus.Channel channel()
+    {
+        if (channel == null)
+            channel = ProgressBus.getInstance().open(new Sink());
+        return channel;
+    }
+
+    /**
+     * Close the channel, it is kept so that later updates go to the closed channel and are ignored.
+     */
+    private synchronized void closeChannel()
+    {
+        channel().close();
+    }
+
+    @Override
+    protected void done()
+    {
+        closeChannel();
+    }
+
+    @Override
+    protected void updateTitle(String title)
+    {
+        channel().title(title);
+    }
+
+    @Override
+    protected void updateMessage(String message)
+    {
+        channel().message(message);
+    }
+
+    @Override
+    protected void updateProgress(long workDone, long max)
+    {
+        updateProgress((double) workDone, (double) max);
+    }
+
+    @Override
+    protected void updateProgress(double workDone, double max)
+    {
+        channel().progress(workDone, max);
+    }
+
+    /**
+     * Receive the coalesced updates of the channel, and pass them to the reporter or the FX properties.
+     */
+    private final class Sink implements TaskReporter
+    {
+        private String message;
+        private long etaMillis = -1;
+        private double progress = -1;
+
+        @Override
+        public void onTitle(String title)
+        {
+            TaskReporter current = reporter;
+            if (current != null) {
+                current.onTitle(title);
+            } else {
+                // a new stage, the estimate of the last one is stale
+                etaMillis = -1;
+                progress = -1;
+                ReportingTask.super.updateTitle(title);
+            }
+        }
+
+        @Override
+        public void onMessage(String message)
+        {
+            TaskReporter current = reporter;
+            if (current != null) {
+                current.onMessage(message);
+            } else {
+                this.message = message;
+                ReportingTask.super.updateMessage(withEta());
+            }
+        }
+
+        @Override
+        public void onProgress(double progress)
+        {
+            TaskReporter current = reporter;
+            if (current != null) {
+                current.onProgress(progress);
+            } else {
+                boolean wasRunning = isRunning();
+                this.progress = progress;
+                ReportingTask.super.updateProgress(progress, 1.0);
+                if (message != null && wasRunning != isRunning())
+                    ReportingTask.super.updateMessage(withEta());
+            }
+        }
+
+        @Override
+        public void onEstimate(double throughput, long etaMillis)
+        {
+            TaskReporter current = reporter;
+            if (current != null) {
+                current.onEstimate(throughput, etaMillis);
+            } else if (message != null) {
+                this.etaMillis = etaMillis;
+                ReportingTask.super.updateMessage(withEta());
+            }
+        }
+
+        /**
+         * @return true if the stage has determinate progress which is not finished
+         */
+        private boolean isRunning()
+        {
+            return progress >= 0 && progress < 1;
+        }
+
+        private String withEta()
+        {
+            return etaMillis < 0 || !isRunning() ? message
+                    : message + " (" + ProgressBus.formatDuration(etaMillis) + " left)";
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package omics.gui.task;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Keep the preferred protein of the proteins identified by the same set of peptides.
+ * <p>
+ * The peptide set of each protein is reduced once to a signature, the sorted ordinals of its peptides and a 64-bit
+ * hash of them, so that a group is split by a hash lookup per protein instead of comparing each pair of proteins.
+ *
+ * @param <P> protein type
+ * @param <M> peptide type
+ * @version 1.0.0
+ */
+public class SameSetSelector<P, M>
+{
+    private final Function<P, ? extends Collection<M>> peptideFunc;
+    private final Comparator<P> comparator;
+    private final Map<M, Integer> ordinalMap = new HashMap<>();
+
+    /**
+     * @param peptideFunc peptides of a protein
+     * @param comparator  order of the proteins with the same peptide set, the first one is kept
+     */
+    public SameSetSelector(Function<P, ? extends Collection<M>> peptideFunc, Comparator<P> comparator)
+    {
+        this.peptideFunc = peptideFunc;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Select the preferred protein of each peptide set in a group.
+     *
+     * @param proteinList proteins of a group
+     * @return the preferred proteins, in the order their peptide sets first appear in the group
+     */
+    public List<P> select(List<P> proteinList)
+    {
+        Map<Signature, P> bestMap = new LinkedHashMap<>();
+        for (P protein : proteinList) {
+            bestMap.merge(signature(protein), protein, (best, current) -> comparator.compare(best, current) > 0
+                    ? current : best);
+        }
+        return new ArrayList<>(bestMap.values());
+    }
+
+    private Signature signature(P protein)
+    {
+        Collection<M> peptides = peptideFunc.apply(protein);
+        int[] ids = new int[peptides.size()];
+        int size = 0;
+        for (M peptide : peptides) {
+            Integer ordinal = ordinalMap.get(peptide);
+            if (ordinal == null) {
+                ordinal = ordinalMap.size();
+                ordinalMap.put(peptide, ordinal);
+            }
+            ids[size++] = ordinal;
+        }
+        Arrays.sort(ids);
+
+        // remove duplicates, the peptides are compared as a set
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (count == 0 || ids[i] != ids[count - 1])
+                ids[count++] = ids[i];
+        }
+        if (count < size)
+            ids = Arrays.copyOf(ids, count);
+
+        long hash = count;
+        for (int id : ids) {
+            hash = (hash ^ id) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 29;
+        }
+        return new Signature(ids, hash);
+    }
+
+    private static final class Signature
+    {
+        private final int[] ids;
+        private final long hash;
+
+        Signature(int[] ids, long hash)
+        {
+            this.ids = ids;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Signature))
+                return false;
+            Signature signature = (Signature) o;
+            return hash == signature.hash && Arrays.equals(ids, signature.ids);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(hash);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package omics.gui.task;
+
+import omics.pdk.ident.SpectrumMatch;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Checkpoint of the chunks of a search pass, the {@link SpectrumMatch}s of each finished chunk are spilled to a
+ * compressed binary file, so that a restarted search only searches the missing chunks.
+ * <p>
+ * The spill files are stored in {@link #CHECKPOINT_DIR} next to the output, named by the fingerprint of the MS file,
+ * the search parameters, the database and the pass, followed by the chunk range. They are deleted once the result of
+ * the pass is written.
+ * <p>
+ * The spill files are read with {@link SearchCoordinator#MATCH_FILTER}, so a file of other types is treated as broken
+ * and searched again. The search fails if checkpoint is requested but the matches can not be serialized.
+ *
+ * @version 1.0.0
+ */
+public class SearchCheckpoint
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(SearchCheckpoint.class);
+
+    /**
+     * directory name of the spill files, created next to the output.
+     */
+    public static final String CHECKPOINT_DIR = ".omics_checkpoint";
+    private static final String SPILL_EXT = ".spill";
+    private static final int MAGIC = 0x4F4D4350;
+    private static final int VERSION = 1;
+
+    private final Path dir;
+    private final String fingerprint;
+
+    /**
+     * Constructor.
+     *
+     * @param outPath     output path of the pass
+     * @param fingerprint fingerprint of the MS file, parameters, database and pass
+     */
+    public SearchCheckpoint(Path outPath, String fingerprint)
+    {
+        this.dir = outPath.toAbsolutePath().getParent().resolve(CHECKPOINT_DIR);
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Return the fingerprint of a search pass.
+     *
+     * @param msFile        MS file
+     * @param parameterFile search parameter file
+     * @param databaseKey   key of the {@link PreparedDatabase}
+     * @param pass          name of the pass, target or decoy
+     * @return hex fingerprint
+     */
+    public static String fingerprint(Path msFile, Path parameterFile, String databaseKey, String pass)
+            throws IOException
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        Path path = msFile.toAbsolutePath();
+        String file = path + "|" + Files.size(path) + "|" + Files.getLastModifiedTime(path).toMillis();
+        digest.update(file.getBytes(StandardCharsets.UTF_8));
+        digest.update(Files.readAllBytes(parameterFile));
+        digest.update((databaseKey + "|" + pass).getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder builder = new StringBuilder();
+        byte[] bytes = digest.digest();
+        for (int i = 0; i < 12; i++) {
+            builder.append(String.format("%02x", bytes[i]));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return ranges {start, end} of the spilled chunks, sorted by start, overlapped ranges are skipped.
+     */
+    public List<int[]> getCompletedRanges()
+    {
+        List<int[]> rangeList = new ArrayList<>();
+        if (Files.notExists(dir))
+            return rangeList;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, fingerprint + "_*" + SPILL_EXT)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                String[] items = name.substring(fingerprint.length() + 1, name.length() - SPILL_EXT.length()).split("_");
+                if (items.length != 2)
+                    continue;
+                try {
+                    rangeList.add(new int[]{Integer.parseInt(items[0]), Integer.parseInt(items[1])});
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to list checkpoint {}: {}", dir, e.getMessage());
+        }
+
+        rangeList.sort(Comparator.comparingInt(range -> range[0]));
+        List<int[]> validList = new ArrayList<>(rangeList.size());
+        int end = 0;
+        for (int[] range : rangeList) {
+            if (range[0] >= end && range[1] > range[0]) {
+                validList.add(range);
+                end = range[1];
+            }
+        }
+        return validList;
+    }
+
+    /**
+     * @return true if the chunk [start, end) is spilled
+     */
+    public boolean contains(int start, int end)
+    {
+        return Files.exists(file(start, end));
+    }
+
+    /**
+     * Save the {@link SpectrumMatch}s of a chunk, a failed write is logged and the chunk is searched again by the next
+     * run.
+     *
+     * @throws IllegalStateException if the {@link SpectrumMatch}s can not be serialized
+     */
+    public void save(int start, int end, List<SpectrumMatch> matchList)
+    {
+        Path file = file(start, end);
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tmpFile))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(matchList.size());
+                ObjectOutputStream objectOut = new ObjectOutputStream(out);
+                for (SpectrumMatch match : matchList) {
+                    objectOut.writeObject(match);
+                }
+                objectOut.flush();
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NotSerializableException e) {
+            throw new IllegalStateException("Checkpoint is not supported, spectrum match is not serializable: "
+                    + e.getMessage() + ", search without checkpoint", e);
+        } catch (IOException e) {
+            logger.warn("Failed to write checkpoint {}: {}", file, e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(tmpFile);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Load the {@link SpectrumMatch}s of a spilled chunk.
+     *
+     * @return {@link SpectrumMatch}s, null if the spill file is missing or broken
+     */
+    public List<SpectrumMatch> load(int start, int end)
+    {
+        Path file = file(start, end);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("invalid header");
+            int size = in.readInt();
+            ObjectInputStream objectIn = new ObjectInputStream(in);
+            objectIn.setObjectInputFilter(SearchCoordinator.MATCH_FILTER);
+            List<SpectrumMatch> matchList = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                matchList.add((SpectrumMatch) objectIn.readObject());
+            }
+            return matchList;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warn("Failed to read checkpoint {}, search it again: {}", file, e.getMessage());
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Delete all spill files of this pass.
+     */
+    public void clear()
+    {
+        if (Files.notExists(dir))
+            return;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, fingerprint + "_*" + SPILL_EXT)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to clear checkpoint {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private Path file(int start, int end)
+    {
+        return dir.resolve(fingerprint + "_" + start + "_" + end + SPILL_EXT);
+    }
+}
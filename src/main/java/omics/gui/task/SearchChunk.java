@@ -0,0 +1,169 @@
+package omics.gui.task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A range of spectra searched by one {@link omics.pdk.task.SearchFastaTask}, with its estimated cost and the measured
+ * running time.
+ *
+ * @version 1.0.0
+ */
+public class SearchChunk
+{
+    private final int startIndex;
+    private final int endIndex;
+    private final double cost;
+
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile boolean started = false;
+    private volatile boolean finished = false;
+    private volatile String threadName;
+
+    /**
+     * Constructor.
+     *
+     * @param startIndex start spectrum index, inclusive
+     * @param endIndex   end spectrum index, exclusive
+     * @param cost       estimated cost of this chunk
+     */
+    public SearchChunk(int startIndex, int endIndex, double cost)
+    {
+        this.startIndex = startIndex;
+        this.endIndex = endIndex;
+        this.cost = cost;
+    }
+
+    /**
+     * Mark the start of the chunk on current thread.
+     */
+    void start()
+    {
+        this.threadName = Thread.currentThread().getName();
+        this.startNanos = System.nanoTime();
+        this.started = true;
+    }
+
+    /**
+     * Mark the end of the chunk.
+     */
+    void finish()
+    {
+        this.endNanos = System.nanoTime();
+        this.finished = true;
+    }
+
+    /**
+     * @return start spectrum index, inclusive
+     */
+    public int getStartIndex()
+    {
+        return startIndex;
+    }
+
+    /**
+     * @return end spectrum index, exclusive
+     */
+    public int getEndIndex()
+    {
+        return endIndex;
+    }
+
+    /**
+     * @return number of spectra in this chunk
+     */
+    public int size()
+    {
+        return endIndex - startIndex;
+    }
+
+    /**
+     * @return estimated cost of this chunk
+     */
+    public double getCost()
+    {
+        return cost;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the chunk started
+     */
+    public long getStartNanos()
+    {
+        return startNanos;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the chunk finished
+     */
+    public long getEndNanos()
+    {
+        return endNanos;
+    }
+
+    /**
+     * @return true if this chunk is finished
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * @return running time in milliseconds, -1 if not finished
+     */
+    public double getElapsedMillis()
+    {
+        if (!started || !finished)
+            return -1;
+        return (endNanos - startNanos) / 1e6;
+    }
+
+    /**
+     * @return name of the thread running this chunk
+     */
+    public String getThreadName()
+    {
+        return threadName;
+    }
+
+    /**
+     * Return a summary of the running time of finished chunks, the tail is the time from the first thread running out
+     * of chunks to the last chunk finished.
+     *
+     * @param chunkList {@link SearchChunk}s
+     * @return summary of chunk timing
+     */
+    public static String summarize(List<SearchChunk> chunkList)
+    {
+        List<Double> timeList = new ArrayList<>(chunkList.size());
+        Map<String, Long> threadEndMap = new HashMap<>();
+        long lastEnd = Long.MIN_VALUE;
+        for (SearchChunk chunk : chunkList) {
+            if (!chunk.isFinished())
+                continue;
+            timeList.add(chunk.getElapsedMillis());
+            threadEndMap.merge(chunk.getThreadName(), chunk.getEndNanos(), Math::max);
+            lastEnd = Math.max(lastEnd, chunk.getEndNanos());
+        }
+        if (timeList.isEmpty())
+            return "no chunk finished";
+
+        timeList.sort(Double::compare);
+        long firstIdle = Long.MAX_VALUE;
+        for (Long end : threadEndMap.values()) {
+            firstIdle = Math.min(firstIdle, end);
+        }
+        return String.format("%d chunks, median %.1f ms, max %.1f ms, tail %.1f ms", timeList.size(),
+                timeList.get(timeList.size() / 2), timeList.get(timeList.size() - 1), (lastEnd - firstIdle) / 1e6);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[" + startIndex + ", " + endIndex + ")";
+    }
+}
@@ -0,0 +1,460 @@
+package omics.gui.task;
+
+import omics.pdk.ident.SpectrumMatch;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coordinator of {@link SearchWorker} processes on the local host.
+ * <p>
+ * Each worker is a separate JVM with its own heap, it loads the database once and connects back to the coordinator
+ * through a loopback socket. The chunks are sent to the worker with the fewest pending chunks, the
+ * {@link SpectrumMatch}s are returned to the caller, which merges them for conversion. A worker which dies is
+ * restarted and its pending chunks are searched again.
+ * <p>
+ * A worker must present the random token of the coordinator, which is passed on its command line, before it is
+ * attached, and the results are deserialized with a filter which only accepts the types of a {@link SpectrumMatch}
+ * list. The output of each worker is appended to <code>search-worker-&lt;id&gt;.log</code> in the log directory, so
+ * that it does not mix with the output of the coordinator.
+ *
+ * @version 1.0.0
+ */
+public class SearchCoordinator implements AutoCloseable
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(SearchCoordinator.class);
+
+    /**
+     * max times a chunk is sent to workers before the search fails.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long READY_TIMEOUT_MINUTES = 30;
+    /**
+     * max time to wait for the result of a chunk, a worker which does not answer in time is restarted.
+     */
+    private static final long CHUNK_TIMEOUT_MINUTES = 60;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+    /**
+     * types of a serialized {@link SpectrumMatch} list, anything else is rejected before it is created.
+     */
+    static final ObjectInputFilter MATCH_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=64;java.util.ArrayList;java.lang.*;java.util.*;omics.**;!*");
+
+    private final String parameterFile;
+    private final int threadsPerWorker;
+    private final int openFiles;
+    private final String workerHeap;
+    private final String token;
+    private Path logDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+    private final Worker[] workers;
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param parameterFile    search parameter file
+     * @param workerCount      number of worker processes
+     * @param threadsPerWorker number of search threads of each worker
+     * @param openFiles        number of MS files searched at the same time, each worker keeps as many files in memory
+     * @param workerHeap       max heap of each worker, such as "8G", null to use the JVM default
+     */
+    public SearchCoordinator(String parameterFile, int workerCount, int threadsPerWorker, int openFiles,
+            String workerHeap)
+    {
+        this.parameterFile = parameterFile;
+        this.threadsPerWorker = Math.max(threadsPerWorker, 1);
+        this.openFiles = Math.max(openFiles, 1);
+        this.workerHeap = workerHeap;
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        this.token = builder.toString();
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
+    /**
+     * @param logDirectory directory of the worker log files, the temporary directory by default
+     */
+    public void setLogDirectory(Path logDirectory)
+    {
+        this.logDirectory = logDirectory;
+    }
+
+    /**
+     * Start the worker processes, they connect back once their database is prepared.
+     */
+    public void start() throws IOException
+    {
+        serverSocket = new ServerSocket(0, workers.length, InetAddress.getLoopbackAddress());
+        acceptThread = new Thread(this::acceptLoop, "search-coordinator");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        for (Worker worker : workers) {
+            worker.launch();
+        }
+        logger.info("Started {} search workers with {} threads each", workers.length, threadsPerWorker);
+    }
+
+    /**
+     * Search spectra [start, end) of a MS file on a worker, the chunk is sent again if the worker dies.
+     *
+     * @param msFile MS file
+     * @param decoy  true to search the decoy database
+     * @param start  start spectrum index, inclusive
+     * @param end    end spectrum index, exclusive
+     * @return {@link SpectrumMatch}s of the chunk
+     */
+    public List<SpectrumMatch> search(Path msFile, boolean decoy, int start, int end) throws Exception
+    {
+        Exception lastException = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Worker worker = selectWorker();
+            try {
+                return worker.search(msFile, decoy, start, end);
+            } catch (WorkerFailedException e) {
+                lastException = e;
+                logger.warn("Worker {} failed on {} [{}, {}), retry: {}", worker.id, msFile.getFileName(), start, end,
+                        e.getMessage());
+                worker.restart(e.generation);
+            }
+        }
+        throw new IOException("Chunk [" + start + ", " + end + ") of " + msFile.getFileName() + " failed "
+                + MAX_ATTEMPTS + " times", lastException);
+    }
+
+    private Worker selectWorker() throws IOException
+    {
+        if (closed)
+            throw new IOException("Coordinator is closed");
+        Worker selected = workers[0];
+        for (Worker worker : workers) {
+            if (worker.load() < selected.load())
+                selected = worker;
+        }
+        return selected;
+    }
+
+    private void acceptLoop()
+    {
+        while (!closed) {
+            Socket socket = null;
+            try {
+                socket = serverSocket.accept();
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                int id = in.readInt();
+                String workerToken = in.readUTF();
+                if (id < 0 || id >= workers.length
+                        || !MessageDigest.isEqual(token.getBytes(), workerToken.getBytes())) {
+                    logger.warn("Reject connection from {}", socket.getRemoteSocketAddress());
+                    socket.close();
+                    continue;
+                }
+                socket.setSoTimeout(0);
+                workers[id].attach(socket, in);
+            } catch (IOException e) {
+                closeQuietly(socket);
+                if (!closed)
+                    logger.warn("Failed to accept worker connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket)
+    {
+        try {
+            if (socket != null)
+                socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Stop all workers.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        try {
+            if (serverSocket != null)
+                serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+    }
+
+    /**
+     * A worker process and its connection.
+     */
+    private class Worker
+    {
+        private final int id;
+        private final Map<Integer, CompletableFuture<List<SpectrumMatch>>> pendingMap = new ConcurrentHashMap<>();
+        private Process process;
+        private Socket socket;
+        private DataOutputStream out;
+        private CompletableFuture<Void> ready = new CompletableFuture<>();
+        private int generation = 0;
+
+        Worker(int id)
+        {
+            this.id = id;
+        }
+
+        int load()
+        {
+            return pendingMap.size();
+        }
+
+        synchronized void launch() throws IOException
+        {
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            if (workerHeap != null)
+                command.add("-Xmx" + workerHeap);
+            String classPath = System.getProperty("java.class.path");
+            if (classPath != null && !classPath.isEmpty()) {
+                command.add("-cp");
+                command.add(classPath);
+            }
+            Module module = SearchWorker.class.getModule();
+            String modulePath = System.getProperty("jdk.module.path");
+            if (module.isNamed() && modulePath != null) {
+                command.add("--module-path");
+                command.add(modulePath);
+                command.add("-m");
+                command.add(module.getName() + "/" + SearchWorker.class.getName());
+            } else {
+                command.add(SearchWorker.class.getName());
+            }
+            command.add(parameterFile);
+            command.add(String.valueOf(serverSocket.getLocalPort()));
+            command.add(String.valueOf(id));
+            command.add(String.valueOf(threadsPerWorker));
+            command.add(String.valueOf(openFiles));
+            command.add(token);
+            Path logFile = logDirectory.resolve("search-worker-" + id + ".log");
+            process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile.toFile()))
+                    .start();
+            logger.info("Search worker {} logs to {}", id, logFile);
+            int currentGeneration = generation;
+            process.onExit().thenRun(() -> onExit(currentGeneration));
+        }
+
+        /**
+         * Fail the pending chunks when the worker process of the generation exits.
+         */
+        private synchronized void onExit(int exitedGeneration)
+        {
+            if (closed || generation != exitedGeneration)
+                return;
+            WorkerFailedException failure = new WorkerFailedException("process exited", exitedGeneration);
+            ready.completeExceptionally(failure);
+            for (CompletableFuture<List<SpectrumMatch>> future : pendingMap.values()) {
+                future.completeExceptionally(failure);
+            }
+        }
+
+        synchronized void attach(Socket socket, DataInputStream in) throws IOException
+        {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            int currentGeneration = generation;
+            Thread reader = new Thread(() -> readLoop(in, currentGeneration), "search-worker-" + id);
+            reader.setDaemon(true);
+            reader.start();
+            ready.complete(null);
+            logger.info("Search worker {} connected", id);
+        }
+
+        List<SpectrumMatch> search(Path msFile, boolean decoy, int start, int end) throws Exception
+        {
+            CompletableFuture<Void> currentReady;
+            int currentGeneration;
+            synchronized (this) {
+                currentReady = ready;
+                currentGeneration = generation;
+            }
+            try {
+                currentReady.get(READY_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            } catch (TimeoutException e) {
+                throw new WorkerFailedException("not ready in " + READY_TIMEOUT_MINUTES + " minutes", currentGeneration);
+            } catch (ExecutionException e) {
+                throw new WorkerFailedException(String.valueOf(e.getCause().getMessage()), currentGeneration);
+            }
+
+            int requestId = nextRequestId.getAndIncrement();
+            CompletableFuture<List<SpectrumMatch>> future = new CompletableFuture<>();
+            pendingMap.put(requestId, future);
+            synchronized (this) {
+                if (generation != currentGeneration) {
+                    pendingMap.remove(requestId);
+                    throw new WorkerFailedException("restarted", currentGeneration);
+                }
+                try {
+                    out.writeInt(requestId);
+                    out.writeUTF(msFile.toAbsolutePath().toString());
+                    out.writeBoolean(decoy);
+                    out.writeInt(start);
+                    out.writeInt(end);
+                    out.flush();
+                } catch (IOException e) {
+                    pendingMap.remove(requestId);
+                    throw new WorkerFailedException(e.getMessage(), currentGeneration);
+                }
+            }
+
+            try {
+                return future.get(CHUNK_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            } catch (TimeoutException e) {
+                throw new WorkerFailedException("no result in " + CHUNK_TIMEOUT_MINUTES + " minutes",
+                        currentGeneration);
+            } catch (ExecutionException e) {
+                // error frames and rejected results fail the chunk as IOException, so the caller can search it locally
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                throw new IOException("Worker " + id + ": " + cause, cause);
+            } finally {
+                pendingMap.remove(requestId);
+            }
+        }
+
+        private void readLoop(DataInputStream in, int currentGeneration)
+        {
+            try {
+                while (true) {
+                    int requestId = in.readInt();
+                    boolean ok = in.readBoolean();
+                    CompletableFuture<List<SpectrumMatch>> future = pendingMap.get(requestId);
+                    if (ok) {
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        if (future == null)
+                            continue;
+                        // the frame is read, a rejected result fails its chunk only
+                        try {
+                            future.complete(readResult(bytes));
+                        } catch (IOException | ClassNotFoundException e) {
+                            future.completeExceptionally(new IOException("Worker " + id + ": invalid result", e));
+                        }
+                    } else {
+                        String error = in.readUTF();
+                        if (future != null)
+                            future.completeExceptionally(new IOException("Worker " + id + ": " + error));
+                    }
+                }
+            } catch (IOException e) {
+                if (closed)
+                    return;
+                String reason = e instanceof EOFException || e instanceof SocketException ? "connection lost"
+                        : e.toString();
+                WorkerFailedException failure = new WorkerFailedException(reason, currentGeneration);
+                for (CompletableFuture<List<SpectrumMatch>> future : pendingMap.values()) {
+                    future.completeExceptionally(failure);
+                }
+            }
+        }
+
+        /**
+         * Deserialize the result of a chunk, only the types of a {@link SpectrumMatch} list are accepted.
+         */
+        @SuppressWarnings("unchecked")
+        private List<SpectrumMatch> readResult(byte[] bytes) throws IOException, ClassNotFoundException
+        {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                in.setObjectInputFilter(MATCH_FILTER);
+                Object result = in.readObject();
+                if (!(result instanceof ArrayList))
+                    throw new InvalidClassException("Unexpected result " + result.getClass().getName());
+                return (List<SpectrumMatch>) result;
+            }
+        }
+
+        /**
+         * Restart the worker if it is still in the failed generation.
+         */
+        synchronized void restart(int failedGeneration)
+        {
+            if (closed || generation != failedGeneration)
+                return;
+            generation++;
+            logger.warn("Restart search worker {}", id);
+            stopProcess();
+            ready = new CompletableFuture<>();
+            try {
+                launch();
+            } catch (IOException e) {
+                ready.completeExceptionally(e);
+            }
+        }
+
+        synchronized void stop()
+        {
+            stopProcess();
+            WorkerFailedException failure = new WorkerFailedException("coordinator closed", generation);
+            ready.completeExceptionally(failure);
+            for (CompletableFuture<List<SpectrumMatch>> future : pendingMap.values()) {
+                future.completeExceptionally(failure);
+            }
+        }
+
+        private void stopProcess()
+        {
+            try {
+                if (socket != null)
+                    socket.close();
+            } catch (IOException ignored) {
+            }
+            socket = null;
+            out = null;
+            if (process != null && process.isAlive())
+                process.destroyForcibly();
+        }
+    }
+
+    /**
+     * A chunk failed because its worker died or restarted.
+     */
+    private static class WorkerFailedException extends IOException
+    {
+        private final int generation;
+
+        WorkerFailedException(String message, int generation)
+        {
+            super(message);
+            this.generation = generation;
+        }
+    }
+}
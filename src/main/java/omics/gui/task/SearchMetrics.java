@@ -0,0 +1,405 @@
+package omics.gui.task;
+
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per stage metrics of the search of a MS file, published through JMX and written as a JSON report.
+ * <p>
+ * Peak heap of a stage is the max used heap sampled every {@link #SAMPLE_INTERVAL_MILLIS} while the stage is open,
+ * stages may overlap when files are read ahead or target and decoy are interleaved.
+ *
+ * @version 1.0.0
+ */
+public class SearchMetrics implements SearchMetricsMXBean, AutoCloseable
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(SearchMetrics.class);
+
+    /**
+     * JMX domain and type of the metrics, each file is registered with its name and a unique id.
+     */
+    public static final String OBJECT_NAME = "omics.gui:type=SearchMetrics";
+    private static final AtomicInteger ID = new AtomicInteger();
+    /**
+     * extension of the JSON report.
+     */
+    public static final String REPORT_EXT = ".metrics.json";
+    private static final long SAMPLE_INTERVAL_MILLIS = 100;
+    private static final long[] LATENCY_BUCKETS = {10, 50, 100, 250, 500, 1000, 2500, 5000, 10_000, 30_000, 60_000};
+
+    private final String fileName;
+    private final long databaseInitMillis;
+    private final AtomicLong spectraRead = new AtomicLong();
+    private final AtomicLong readMillis = new AtomicLong();
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+    private final AtomicLong chunkCount = new AtomicLong();
+    private final Map<String, long[]> threadMap = new ConcurrentHashMap<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong convertMillis = new AtomicLong();
+    private final AtomicLong writeMillis = new AtomicLong();
+    private final Map<String, AtomicLong> stagePeakMap = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> openStageMap = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sampler;
+    private ObjectName objectName;
+
+    /**
+     * Constructor.
+     *
+     * @param fileName           name of the MS file
+     * @param databaseInitMillis time to prepare the database in milliseconds
+     */
+    public SearchMetrics(String fileName, long databaseInitMillis)
+    {
+        this.fileName = fileName;
+        this.databaseInitMillis = databaseInitMillis;
+        this.sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "search-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sampleHeap, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open a stage, its peak heap is tracked until the returned handle is closed.
+     *
+     * @param name name of the stage
+     * @return handle to close the stage
+     */
+    public Stage stage(String name)
+    {
+        openStageMap.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+        sampleHeap();
+        return new Stage(name);
+    }
+
+    /**
+     * Add the spectra read from the file, the file may be read ahead before this is created, so the heap of the read
+     * stage is the heap used once the spectra are read.
+     *
+     * @param spectra  number of spectra
+     * @param millis   time to read in milliseconds
+     * @param heapUsed heap used after reading in bytes
+     */
+    public void recordRead(long spectra, long millis, long heapUsed)
+    {
+        spectraRead.addAndGet(spectra);
+        readMillis.addAndGet(millis);
+        stagePeakMap.computeIfAbsent("read", key -> new AtomicLong()).accumulateAndGet(heapUsed, Math::max);
+    }
+
+    /**
+     * A chunk is submitted to the executor.
+     */
+    public void onChunkSubmitted()
+    {
+        int depth = queueDepth.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    /**
+     * A submitted chunk is taken by a worker thread.
+     */
+    public void onChunkStarted()
+    {
+        queueDepth.decrementAndGet();
+    }
+
+    /**
+     * A chunk is finished.
+     *
+     * @param chunk finished {@link SearchChunk}
+     */
+    public void onChunkFinished(SearchChunk chunk)
+    {
+        double millis = chunk.getElapsedMillis();
+        if (millis < 0)
+            return;
+        chunkCount.incrementAndGet();
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS.length && millis > LATENCY_BUCKETS[bucket]) {
+            bucket++;
+        }
+        latencyHistogram.incrementAndGet(bucket);
+
+        long[] values = threadMap.computeIfAbsent(chunk.getThreadName(), key -> new long[2]);
+        synchronized (values) {
+            values[0] += chunk.size();
+            values[1] += (long) (millis * 1000);
+        }
+    }
+
+    public void addConvertMillis(long millis)
+    {
+        convertMillis.addAndGet(millis);
+    }
+
+    public void addWriteMillis(long millis)
+    {
+        writeMillis.addAndGet(millis);
+    }
+
+    private void sampleHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        for (Map.Entry<String, AtomicInteger> entry : openStageMap.entrySet()) {
+            if (entry.getValue().get() > 0)
+                stagePeakMap.computeIfAbsent(entry.getKey(), key -> new AtomicLong()).accumulateAndGet(used, Math::max);
+        }
+    }
+
+    @Override
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    @Override
+    public long getDatabaseInitMillis()
+    {
+        return databaseInitMillis;
+    }
+
+    @Override
+    public long getSpectraRead()
+    {
+        return spectraRead.get();
+    }
+
+    @Override
+    public long getReadMillis()
+    {
+        return readMillis.get();
+    }
+
+    @Override
+    public double getReadSpectraPerSecond()
+    {
+        long millis = readMillis.get();
+        return millis == 0 ? 0 : spectraRead.get() * 1000.0 / millis;
+    }
+
+    @Override
+    public long getChunkCount()
+    {
+        return chunkCount.get();
+    }
+
+    @Override
+    public long[] getChunkLatencyBucketsMillis()
+    {
+        return LATENCY_BUCKETS.clone();
+    }
+
+    @Override
+    public long[] getChunkLatencyHistogram()
+    {
+        long[] histogram = new long[latencyHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = latencyHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public Map<String, Double> getThreadSpectraPerSecond()
+    {
+        Map<String, Double> map = new TreeMap<>();
+        for (Map.Entry<String, long[]> entry : threadMap.entrySet()) {
+            long[] values = entry.getValue();
+            synchronized (values) {
+                map.put(entry.getKey(), values[1] == 0 ? 0 : values[0] * 1e6 / values[1]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return queueDepth.get();
+    }
+
+    @Override
+    public int getMaxQueueDepth()
+    {
+        return maxQueueDepth.get();
+    }
+
+    @Override
+    public long getConvertMillis()
+    {
+        return convertMillis.get();
+    }
+
+    @Override
+    public long getWriteMillis()
+    {
+        return writeMillis.get();
+    }
+
+    @Override
+    public Map<String, Long> getStagePeakHeap()
+    {
+        Map<String, Long> map = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : stagePeakMap.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().get());
+        }
+        return map;
+    }
+
+    /**
+     * Register this in the platform MBean server as <code>omics.gui:type=SearchMetrics,name="file",id=n</code>, so
+     * that the files searched at the same time are registered side by side, it is unregistered on {@link #close()}.
+     */
+    public synchronized void register()
+    {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME + ",name=" + ObjectName.quote(fileName) + ",id="
+                    + ID.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            logger.warn("Failed to register search metrics: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return JMX name of this, null if not registered
+     */
+    public synchronized ObjectName getObjectName()
+    {
+        return objectName;
+    }
+
+    private synchronized void unregister()
+    {
+        if (objectName == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (InstanceNotFoundException ignored) {
+        } catch (JMException e) {
+            logger.warn("Failed to unregister search metrics: {}", e.getMessage());
+        }
+        objectName = null;
+    }
+
+    /**
+     * @return the metrics in JSON
+     */
+    public String toJson()
+    {
+        StringBuilder builder = new StringBuilder("{\n");
+        builder.append("  \"file\": \"").append(escape(fileName)).append("\",\n");
+        builder.append("  \"databaseInitMillis\": ").append(databaseInitMillis).append(",\n");
+        builder.append("  \"spectraRead\": ").append(getSpectraRead()).append(",\n");
+        builder.append("  \"readMillis\": ").append(getReadMillis()).append(",\n");
+        builder.append("  \"readSpectraPerSecond\": ").append(format(getReadSpectraPerSecond())).append(",\n");
+        builder.append("  \"chunkCount\": ").append(getChunkCount()).append(",\n");
+        builder.append("  \"chunkLatencyBucketsMillis\": ").append(Arrays.toString(LATENCY_BUCKETS)).append(",\n");
+        builder.append("  \"chunkLatencyHistogram\": ").append(Arrays.toString(getChunkLatencyHistogram())).append(",\n");
+        builder.append("  \"threadSpectraPerSecond\": {");
+        appendMap(builder, getThreadSpectraPerSecond());
+        builder.append("},\n");
+        builder.append("  \"maxQueueDepth\": ").append(getMaxQueueDepth()).append(",\n");
+        builder.append("  \"convertMillis\": ").append(getConvertMillis()).append(",\n");
+        builder.append("  \"writeMillis\": ").append(getWriteMillis()).append(",\n");
+        builder.append("  \"stagePeakHeap\": {");
+        appendMap(builder, getStagePeakHeap());
+        builder.append("}\n}\n");
+        return builder.toString();
+    }
+
+    private static void appendMap(StringBuilder builder, Map<String, ? extends Number> map)
+    {
+        boolean first = true;
+        for (Map.Entry<String, ? extends Number> entry : map.entrySet()) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            Number value = entry.getValue();
+            builder.append('"').append(escape(entry.getKey())).append("\": ")
+                    .append(value instanceof Double ? format(value.doubleValue()) : value.toString());
+        }
+    }
+
+    private static String format(double value)
+    {
+        return String.format(Locale.US, "%.2f", value);
+    }
+
+    private static String escape(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Write the JSON report next to the output.
+     *
+     * @param outPath output path of the search result
+     */
+    public void writeReport(Path outPath)
+    {
+        String name = outPath.getFileName().toString();
+        int index = name.lastIndexOf('.');
+        Path file = outPath.resolveSibling((index > 0 ? name.substring(0, index) : name) + REPORT_EXT);
+        try {
+            Files.write(file, toJson().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warn("Failed to write search metrics {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Stop sampling the heap, and unregister from the MBean server.
+     */
+    @Override
+    public void close()
+    {
+        sampler.shutdownNow();
+        unregister();
+    }
+
+    /**
+     * An open stage.
+     */
+    public class Stage implements AutoCloseable
+    {
+        private final String name;
+        private boolean closed = false;
+
+        private Stage(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public void close()
+        {
+            if (closed)
+                return;
+            closed = true;
+            sampleHeap();
+            openStageMap.get(name).decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package omics.gui.task;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link SearchMetrics}, registered as <code>omics.gui:type=SearchMetrics,name="file",id=n</code>.
+ *
+ * @version 1.0.0
+ */
+public interface SearchMetricsMXBean
+{
+    /**
+     * @return name of the MS file
+     */
+    String getFileName();
+
+    /**
+     * @return time to prepare the database in milliseconds
+     */
+    long getDatabaseInitMillis();
+
+    /**
+     * @return number of spectra read
+     */
+    long getSpectraRead();
+
+    /**
+     * @return time to read the spectra in milliseconds
+     */
+    long getReadMillis();
+
+    /**
+     * @return spectra read per second
+     */
+    double getReadSpectraPerSecond();
+
+    /**
+     * @return number of finished chunks
+     */
+    long getChunkCount();
+
+    /**
+     * @return upper bounds in milliseconds of the chunk latency histogram buckets, the last bucket is unbounded
+     */
+    long[] getChunkLatencyBucketsMillis();
+
+    /**
+     * @return number of chunks in each latency bucket
+     */
+    long[] getChunkLatencyHistogram();
+
+    /**
+     * @return spectra searched per second of busy time, by thread name
+     */
+    Map<String, Double> getThreadSpectraPerSecond();
+
+    /**
+     * @return number of chunks submitted and not started
+     */
+    int getQueueDepth();
+
+    /**
+     * @return max number of chunks submitted and not started
+     */
+    int getMaxQueueDepth();
+
+    /**
+     * @return time to convert the search result in milliseconds
+     */
+    long getConvertMillis();
+
+    /**
+     * @return time to write the search result in milliseconds
+     */
+    long getWriteMillis();
+
+    /**
+     * @return peak heap used in bytes, by stage
+     */
+    Map<String, Long> getStagePeakHeap();
+}
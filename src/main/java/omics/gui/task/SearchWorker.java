@@ -0,0 +1,196 @@
+package omics.gui.task;
+
+import omics.pdk.ident.MsAccessor;
+import omics.pdk.ident.SearchIOPath;
+import omics.pdk.ident.SearchParameters;
+import omics.pdk.ident.SpectrumMatch;
+import omics.pdk.task.SearchFastaTask;
+import omics.util.protein.AminoAcidSet;
+import omics.util.protein.database.FastaSequence;
+import omics.util.protein.digest.Protease;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Worker process of {@link SearchCoordinator}, it loads the database once, connects to the coordinator on the local
+ * host, and searches the spectrum ranges requested by the coordinator.
+ * <p>
+ * Arguments: parameter file, coordinator port, worker id, number of threads, number of MS files kept in memory, token
+ * of the coordinator.
+ * <p>
+ * Each result is serialized into a buffer before it is sent, so a result which cannot be serialized is reported as an
+ * error of its chunk and does not corrupt the stream of the other chunks.
+ *
+ * @version 1.0.0
+ */
+public class SearchWorker
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(SearchWorker.class);
+
+    /**
+     * max length of an error message sent to the coordinator.
+     */
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final SearchParameters parameters;
+    private final FastaSequence targetSequence;
+    private final FastaSequence decoySequence;
+    private final int maxOpenFiles;
+    private final Map<Path, FutureTask<MsAccessor>> accessorMap = new LinkedHashMap<>();
+
+    private SearchWorker(SearchParameters parameters, PreparedDatabase database, int openFiles)
+    {
+        this.parameters = parameters;
+        // one more file, so that a file started while the previous one is finishing does not evict it
+        this.maxOpenFiles = openFiles + 1;
+        this.targetSequence = database.getTargetSequence();
+        this.decoySequence = database.getDecoySequence();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        String parameterFile = args[0];
+        int port = Integer.parseInt(args[1]);
+        int workerId = Integer.parseInt(args[2]);
+        int nrThread = Integer.parseInt(args[3]);
+        int openFiles = Integer.parseInt(args[4]);
+        String token = args[5];
+
+        SearchParameters parameters = SearchParameters.getParameter(parameterFile);
+        PreparedDatabase database = DatabaseRegistry.getInstance().acquire(parameters);
+        AminoAcidSet aaSet = parameters.getAminoAcidSet();
+        aaSet.setAminoAcidProbabilities(database.getTargetSequence());
+        Protease protease = parameters.getProtease();
+        Optional<Protease> secondProtease = parameters.getSecondProtease();
+        if (secondProtease.isPresent()) {
+            aaSet.registerEnzyme(protease.getEnzyme(), secondProtease.get().getEnzyme());
+        } else {
+            aaSet.registerEnzyme(protease.getEnzyme());
+        }
+
+        SearchWorker worker = new SearchWorker(parameters, database, openFiles);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            worker.serve(socket, workerId, token, nrThread);
+        }
+        // the coordinator closed the connection
+        System.exit(0);
+    }
+
+    private void serve(Socket socket, int workerId, String token, int nrThread) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.writeInt(workerId);
+        out.writeUTF(token);
+        out.flush();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        logger.info("Worker {} ready with {} threads", workerId, nrThread);
+
+        ExecutorService executor = Executors.newFixedThreadPool(nrThread);
+        try {
+            while (true) {
+                int requestId;
+                try {
+                    requestId = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                Path msFile = Paths.get(in.readUTF());
+                boolean decoy = in.readBoolean();
+                int start = in.readInt();
+                int end = in.readInt();
+                executor.submit(() -> {
+                    List<SpectrumMatch> matchList = null;
+                    String error = null;
+                    try {
+                        MsAccessor accessor = getAccessor(msFile);
+                        FastaSequence fasta = decoy ? decoySequence : targetSequence;
+                        matchList = new SearchFastaTask(accessor, start, end, parameters, fasta,
+                                new CountDownLatch(1)).call();
+                    } catch (Throwable e) {
+                        error = e.toString();
+                        logger.error("Search of {} [{}, {}) failed", msFile.getFileName(), start, end, e);
+                    }
+                    respond(out, requestId, matchList, error);
+                });
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void respond(DataOutputStream out, int requestId, List<SpectrumMatch> matchList, String error)
+    {
+        byte[] bytes = null;
+        if (error == null) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(buffer)) {
+                objectOut.writeObject(new ArrayList<>(matchList));
+                objectOut.flush();
+                bytes = buffer.toByteArray();
+            } catch (IOException e) {
+                error = "Failed to serialize result: " + e;
+                logger.error(error);
+            }
+        }
+        if (error != null && error.length() > MAX_ERROR_LENGTH)
+            error = error.substring(0, MAX_ERROR_LENGTH);
+
+        synchronized (out) {
+            try {
+                out.writeInt(requestId);
+                out.writeBoolean(error == null);
+                if (error == null) {
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                } else {
+                    out.writeUTF(error);
+                }
+                out.flush();
+            } catch (IOException e) {
+                logger.error("Failed to send result to coordinator", e);
+            }
+        }
+    }
+
+    /**
+     * Return the {@link MsAccessor} of a MS file, the file is read once and shared by the threads.
+     */
+    private MsAccessor getAccessor(Path msFile) throws Exception
+    {
+        FutureTask<MsAccessor> task;
+        boolean owner = false;
+        synchronized (accessorMap) {
+            task = accessorMap.get(msFile);
+            if (task == null) {
+                SearchIOPath searchIOPath = new SearchIOPath(msFile);
+                task = new FutureTask<>(() -> {
+                    MsAccessor accessor = new MsAccessor(msFile, searchIOPath.getMSFileType(), parameters);
+                    accessor.go();
+                    return accessor;
+                });
+                accessorMap.put(msFile, task);
+                owner = true;
+                while (accessorMap.size() > maxOpenFiles) {
+                    accessorMap.remove(accessorMap.keySet().iterator().next());
+                }
+            }
+        }
+        if (owner)
+            task.run();
+        return task.get();
+    }
+}
@@ -0,0 +1,83 @@
+package omics.gui.task;
+
+import omics.pdk.ident.MsAccessor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Spectra of MS files shared by searches with the same {@link SpectrumSettings}, each file is read once by the first
+ * search asking for it, the other searches wait for it.
+ * <p>
+ * The entry of a file is dropped once all searches took it, so the spectra are freed as soon as the last search
+ * releases them.
+ *
+ * @version 1.0.0
+ */
+public class SharedSpectra
+{
+    private final int userCount;
+    private final Map<Path, Entry> entryMap = new HashMap<>();
+
+    /**
+     * @param userCount number of searches taking each file
+     */
+    public SharedSpectra(int userCount)
+    {
+        this.userCount = userCount;
+    }
+
+    /**
+     * Return the spectra of a file, read it on current thread if no other search has.
+     *
+     * @param msFile MS file
+     * @param reader read the spectra of the file, it may return null if the file has no valid spectrum
+     * @return {@link MsAccessor} of the file, null if the file has no valid spectrum.
+     */
+    public MsAccessor take(Path msFile, Callable<MsAccessor> reader) throws IOException
+    {
+        Entry entry;
+        boolean owner = false;
+        synchronized (this) {
+            entry = entryMap.get(msFile);
+            if (entry == null) {
+                entry = new Entry(reader);
+                entryMap.put(msFile, entry);
+                owner = true;
+            }
+            if (++entry.takenCount == userCount)
+                entryMap.remove(msFile);
+        }
+        if (owner)
+            entry.task.run();
+        try {
+            return entry.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + msFile, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException("Failed to read " + msFile, cause);
+        }
+    }
+
+    private static final class Entry
+    {
+        private final FutureTask<MsAccessor> task;
+        private int takenCount;
+
+        Entry(Callable<MsAccessor> reader)
+        {
+            this.task = new FutureTask<>(reader);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package omics.gui.task;
+
+import omics.pdk.ident.MsAccessor;
+import omics.pdk.ident.SearchParameters;
+import omics.util.ms.MsnSpectrum;
+import omics.util.ms.RetentionTime;
+import omics.util.ms.RetentionTimeDiscrete;
+import omics.util.ms.RetentionTimeInterval;
+import omics.util.ms.ScanNumber;
+import omics.util.ms.TimeUnit;
+import omics.util.ms.peaklist.Peak;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary cache of the preprocessed spectra of a MS file, so that a file searched again with the same
+ * {@link SpectrumSettings} is loaded without parsing and preprocessing.
+ * <p>
+ * The cache files are stored in {@link #CACHE_DIR} next to the MS file, named by the file name and a key of the file
+ * checksum and the spectrum settings, so that a changed file or changed settings never hit a stale cache. The layout
+ * is a fixed size record per spectrum followed by the m/z and intensity columns of all peaks, the precursor charges
+ * and scan numbers, the retention times in seconds and the titles, each region is memory mapped on load. All the
+ * scan numbers, retention times and precursor charges of a spectrum are kept, scan number intervals are stored as
+ * their value.
+ *
+ * @version 1.0.0
+ */
+public class SpectrumCache
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(SpectrumCache.class);
+
+    /**
+     * directory name of the cache files, created next to the MS file.
+     */
+    public static final String CACHE_DIR = ".omics_spectrum_cache";
+    private static final String CACHE_EXT = ".spc";
+    private static final int MAGIC = 0x4F4D5343;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 44;
+    private static final int RECORD_BYTES = 64;
+
+    private final Path msFile;
+    private final Path file;
+
+    SpectrumCache(Path msFile, Path file)
+    {
+        this.msFile = msFile;
+        this.file = file;
+    }
+
+    /**
+     * Return the cache of a MS file and spectrum settings, the file is read once to compute its checksum.
+     *
+     * @param msFile     MS file
+     * @param parameters {@link SearchParameters} of the search
+     * @return {@link SpectrumCache}, which may not exist yet.
+     */
+    public static SpectrumCache of(Path msFile, SearchParameters parameters) throws IOException
+    {
+        Path path = msFile.toAbsolutePath();
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[1 << 20];
+        try (InputStream in = Files.newInputStream(path)) {
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, count);
+            }
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String key = Files.size(path) + "|" + Long.toHexString(crc.getValue()) + "|" + SpectrumSettings.key(parameters);
+        byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            builder.append(String.format("%02x", hash[i]));
+        }
+        Path file = path.getParent().resolve(CACHE_DIR).resolve(path.getFileName() + "-" + builder + CACHE_EXT);
+        return new SpectrumCache(path, file);
+    }
+
+    /**
+     * @return path of the cache file
+     */
+    public Path getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Load the cached spectra.
+     *
+     * @param fileType   type of the MS file
+     * @param parameters {@link SearchParameters} of the search
+     * @return {@link MsAccessor} of the cached spectra, null if the cache does not exist or is invalid.
+     */
+    public MsAccessor load(String fileType, SearchParameters parameters)
+    {
+        if (Files.notExists(file))
+            return null;
+        long startTime = System.currentTimeMillis();
+        try {
+            MsnSpectrum[] spectra = read();
+            logger.info("Loaded {} spectra of {} from cache in {} ms", spectra.length, msFile.getFileName(),
+                    System.currentTimeMillis() - startTime);
+            return new CachedAccessor(msFile, fileType, parameters, spectra);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignore the spectrum cache {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Read the spectra of the cache file.
+     */
+    MsnSpectrum[] read() throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+                throw new IOException("invalid header");
+            int count = header.getInt();
+            long peakCount = header.getLong();
+            long titleBytes = header.getLong();
+            long intCount = header.getLong();
+            long timeCount = header.getLong();
+
+            long position = HEADER_BYTES;
+            ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * RECORD_BYTES);
+            position += (long) count * RECORD_BYTES;
+            DoubleBuffer mzs = channel.map(FileChannel.MapMode.READ_ONLY, position, peakCount * 8).asDoubleBuffer();
+            position += peakCount * 8;
+            DoubleBuffer intensities = channel.map(FileChannel.MapMode.READ_ONLY, position, peakCount * 8)
+                    .asDoubleBuffer();
+            position += peakCount * 8;
+            IntBuffer ints = channel.map(FileChannel.MapMode.READ_ONLY, position, intCount * 4).asIntBuffer();
+            position += intCount * 4;
+            DoubleBuffer times = channel.map(FileChannel.MapMode.READ_ONLY, position, timeCount * 8).asDoubleBuffer();
+            position += timeCount * 8;
+            ByteBuffer titles = channel.map(FileChannel.MapMode.READ_ONLY, position, titleBytes);
+
+            MsnSpectrum[] spectra = new MsnSpectrum[count];
+            for (int i = 0; i < count; i++) {
+                int peakStart = (int) records.getLong();
+                int size = records.getInt();
+                double precursorMz = records.getDouble();
+                double precursorIntensity = records.getDouble();
+                int msLevel = records.getInt();
+                int index = records.getInt();
+                int intStart = records.getInt();
+                int chargeCount = records.getInt();
+                int scanCount = records.getInt();
+                int timeStart = records.getInt();
+                int retentionTimeCount = records.getInt();
+                int titleStart = records.getInt();
+                int titleLength = records.getInt();
+
+                double[] mzArray = new double[size];
+                double[] intensityArray = new double[size];
+                mzs.position(peakStart);
+                mzs.get(mzArray);
+                intensities.position(peakStart);
+                intensities.get(intensityArray);
+
+                MsnSpectrum spectrum = new MsnSpectrum();
+                spectrum.addSorted(mzArray, intensityArray);
+                int[] charges = new int[chargeCount];
+                ints.position(intStart);
+                ints.get(charges);
+                spectrum.setPrecursor(new Peak(precursorMz, precursorIntensity, charges));
+                spectrum.setMsLevel(msLevel);
+                for (int j = 0; j < scanCount; j++) {
+                    spectrum.addScanNumber(ints.get());
+                }
+                spectrum.setIndex(index);
+                times.position(timeStart);
+                for (int j = 0; j < retentionTimeCount; j++) {
+                    double min = times.get();
+                    double max = times.get();
+                    spectrum.addRetentionTime(min == max ? new RetentionTimeDiscrete(min, TimeUnit.SECOND)
+                            : new RetentionTimeInterval(min, max, TimeUnit.SECOND));
+                }
+                if (titleLength >= 0) {
+                    byte[] bytes = new byte[titleLength];
+                    titles.position(titleStart);
+                    titles.get(bytes);
+                    spectrum.setTitle(new String(bytes, StandardCharsets.UTF_8));
+                }
+                spectra[i] = spectrum;
+            }
+            return spectra;
+        }
+    }
+
+    /**
+     * Write the preprocessed spectra of an accessor, a failure is logged and ignored, the search does not depend on
+     * the cache.
+     *
+     * @param accessor {@link MsAccessor} of the MS file
+     */
+    public void store(MsAccessor accessor)
+    {
+        try {
+            write(accessor.size(), accessor::getSpectrum);
+            logger.info("Cached {} spectra of {}", accessor.size(), msFile.getFileName());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to cache the spectra of {}: {}", msFile.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Write spectra to the cache file, through a temporary file so that a failed write leaves no cache.
+     *
+     * @param count    number of spectra
+     * @param spectrum spectrum of each index
+     */
+    void write(int count, IntFunction<MsnSpectrum> spectrum) throws IOException
+    {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            long peakCount = 0;
+            long intCount = 0;
+            long timeCount = 0;
+            ByteArrayOutputStream titleBytes = new ByteArrayOutputStream();
+            int[] titleStarts = new int[count];
+            int[] titleLengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                MsnSpectrum current = spectrum.apply(i);
+                peakCount += current.size();
+                intCount += current.getPrecursor().getChargeList().length + current.getScanNumbers().size();
+                timeCount += current.getRetentionTimes().size() * 2L;
+                String title = current.getTitle();
+                titleStarts[i] = titleBytes.size();
+                if (title == null) {
+                    titleLengths[i] = -1;
+                } else {
+                    byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+                    titleBytes.write(bytes, 0, bytes.length);
+                    titleLengths[i] = bytes.length;
+                }
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp),
+                    1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                out.writeLong(peakCount);
+                out.writeLong(titleBytes.size());
+                out.writeLong(intCount);
+                out.writeLong(timeCount);
+
+                long peakStart = 0;
+                int intStart = 0;
+                int timeStart = 0;
+                for (int i = 0; i < count; i++) {
+                    MsnSpectrum current = spectrum.apply(i);
+                    Peak precursor = current.getPrecursor();
+                    int chargeCount = precursor.getChargeList().length;
+                    int scanCount = current.getScanNumbers().size();
+                    int retentionTimeCount = current.getRetentionTimes().size();
+                    out.writeLong(peakStart);
+                    out.writeInt(current.size());
+                    out.writeDouble(precursor.getMz());
+                    out.writeDouble(precursor.getIntensity());
+                    out.writeInt(current.getMsLevel());
+                    out.writeInt(current.getIndex());
+                    out.writeInt(intStart);
+                    out.writeInt(chargeCount);
+                    out.writeInt(scanCount);
+                    out.writeInt(timeStart);
+                    out.writeInt(retentionTimeCount);
+                    out.writeInt(titleStarts[i]);
+                    out.writeInt(titleLengths[i]);
+                    peakStart += current.size();
+                    intStart += chargeCount + scanCount;
+                    timeStart += retentionTimeCount * 2;
+                }
+                for (int i = 0; i < count; i++) {
+                    MsnSpectrum current = spectrum.apply(i);
+                    for (int j = 0; j < current.size(); j++) {
+                        out.writeDouble(current.getX(j));
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    MsnSpectrum current = spectrum.apply(i);
+                    for (int j = 0; j < current.size(); j++) {
+                        out.writeDouble(current.getY(j));
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    MsnSpectrum current = spectrum.apply(i);
+                    for (int charge : current.getPrecursor().getChargeList()) {
+                        out.writeInt(charge);
+                    }
+                    for (ScanNumber scanNumber : current.getScanNumbers()) {
+                        out.writeInt(scanNumber.getValue());
+                    }
+                }
+                // RetentionTime reports seconds whatever the unit it is created with
+                for (int i = 0; i < count; i++) {
+                    for (RetentionTime retentionTime : spectrum.apply(i).getRetentionTimes()) {
+                        out.writeDouble(retentionTime.getMinRetentionTime());
+                        out.writeDouble(retentionTime.getMaxRetentionTime());
+                    }
+                }
+                titleBytes.writeTo(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * {@link MsAccessor} serving the spectra loaded from the cache. Only {@link #size()} and
+     * {@link #getSpectrum(int)} are served, which is how the search chunks and the result conversion read spectra;
+     * the parsed {@link omics.msdk.model.MsDataFile} of a parsing accessor is not available.
+     */
+    private static final class CachedAccessor extends MsAccessor
+    {
+        private final MsnSpectrum[] spectra;
+
+        CachedAccessor(Path msFile, String fileType, SearchParameters parameters, MsnSpectrum[] spectra)
+        {
+            super(msFile, fileType, parameters);
+            this.spectra = spectra;
+        }
+
+        @Override
+        public void go() { }
+
+        @Override
+        public int size()
+        {
+            return spectra.length;
+        }
+
+        @Override
+        public MsnSpectrum getSpectrum(int index)
+        {
+            return spectra[index];
+        }
+    }
+}
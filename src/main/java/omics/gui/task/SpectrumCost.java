@@ -0,0 +1,76 @@
+package omics.gui.task;
+
+import omics.pdk.ident.MsAccessor;
+import omics.util.ms.MsnSpectrum;
+import omics.util.ms.peaklist.Peak;
+
+/**
+ * Estimate the relative search cost of spectra.
+ * <p>
+ * The cost of a spectrum grows with its number of peaks, precursor charge, and the number of candidate peptides in
+ * its precursor mass window. The candidate count is approximated by the number of peptides with the length of the
+ * precursor mass, taken from the length-to-count array of the database.
+ *
+ * @version 1.0.0
+ */
+public class SpectrumCost
+{
+    /**
+     * average mass of amino acid residue, used to guess peptide length from precursor mass.
+     */
+    public static final double AVERAGE_RESIDUE_MASS = 110.0;
+
+    private SpectrumCost() { }
+
+    /**
+     * Estimate the cost of all spectra in a {@link MsAccessor}.
+     *
+     * @param accessor  {@link MsAccessor}
+     * @param len2Count number of peptides of each length in the database
+     * @return cost of each spectrum, in spectrum index order.
+     */
+    public static double[] estimate(MsAccessor accessor, int[] len2Count)
+    {
+        int size = accessor.size();
+        double[] costs = new double[size];
+        for (int i = 0; i < size; i++) {
+            MsnSpectrum spectrum = accessor.getSpectrum(i);
+            Peak precursor = spectrum.getPrecursor();
+            costs[i] = cost(precursor.getMass(), precursor.getCharge(), spectrum.size(), len2Count);
+        }
+        return costs;
+    }
+
+    /**
+     * Return the cost of a spectrum.
+     *
+     * @param precursorMass   precursor neutral mass
+     * @param precursorCharge precursor charge
+     * @param peakCount       number of peaks
+     * @param len2Count       number of peptides of each length in the database
+     * @return relative search cost.
+     */
+    public static double cost(double precursorMass, int precursorCharge, int peakCount, int[] len2Count)
+    {
+        return (1 + peakCount) * Math.max(precursorCharge, 1) * (1 + candidateCount(precursorMass, len2Count));
+    }
+
+    /**
+     * Return the approximate number of candidate peptides of given mass.
+     *
+     * @param precursorMass precursor neutral mass
+     * @param len2Count     number of peptides of each length in the database
+     * @return candidate count.
+     */
+    public static double candidateCount(double precursorMass, int[] len2Count)
+    {
+        if (len2Count == null || len2Count.length == 0)
+            return 0;
+        int length = (int) Math.round(precursorMass / AVERAGE_RESIDUE_MASS);
+        if (length < 0)
+            length = 0;
+        if (length >= len2Count.length)
+            length = len2Count.length - 1;
+        return len2Count[length];
+    }
+}
@@ -0,0 +1,180 @@
+package omics.gui.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lists of values grouped by a spectrum key packed in a long, the ordinal of the MS file and the scan number or index
+ * of the spectrum, without creating a key string or a boxed key for each value.
+ * <p>
+ * The keys are stored in an open addressing table, and iterated in the order they are first added.
+ *
+ * @version 1.0.0
+ */
+public class SpectrumKeyMap<T>
+{
+    private static final int INDEX_FLAG = 1 << 31;
+
+    private int[] table;
+    private long[] keys;
+    private List<T>[] values;
+    private int size;
+
+    public SpectrumKeyMap()
+    {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize expected number of keys
+     */
+    @SuppressWarnings("unchecked")
+    public SpectrumKeyMap(int expectedSize)
+    {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        table = new int[capacity];
+        keys = new long[capacity / 2];
+        values = new List[capacity / 2];
+    }
+
+    /**
+     * Return the key of a spectrum by its scan number.
+     *
+     * @param file ordinal of the MS file
+     * @param scan scan number, not negative
+     */
+    public static long scanKey(int file, int scan)
+    {
+        return ((long) file << 32) | scan;
+    }
+
+    /**
+     * Return the key of a spectrum without scan number by its index in the MS file.
+     *
+     * @param file  ordinal of the MS file
+     * @param index index of the spectrum, not negative
+     */
+    public static long indexKey(int file, int index)
+    {
+        return ((long) file << 32) | (INDEX_FLAG | index) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return ordinal of the MS file of a key
+     */
+    public static int file(long key)
+    {
+        return (int) (key >>> 32);
+    }
+
+    /**
+     * @return the key with the MS file changed
+     */
+    public static long withFile(long key, int file)
+    {
+        return ((long) file << 32) | key & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Add a value to the list of a key.
+     */
+    public void add(long key, T value)
+    {
+        list(key).add(value);
+    }
+
+    /**
+     * Add values to the list of a key.
+     */
+    public void addAll(long key, List<T> valueList)
+    {
+        list(key).addAll(valueList);
+    }
+
+    /**
+     * @return the list of a key, null if absent
+     */
+    public List<T> get(long key)
+    {
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (keys[entry] == key)
+                return values[entry];
+        }
+        return null;
+    }
+
+    /**
+     * @return number of keys
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param i index of the key, in the order the keys are added
+     * @return the key
+     */
+    public long keyAt(int i)
+    {
+        return keys[i];
+    }
+
+    /**
+     * @param i index of the key, in the order the keys are added
+     * @return the list of the key
+     */
+    public List<T> valueAt(int i)
+    {
+        return values[i];
+    }
+
+    /**
+     * @return the list of a key, an empty list is added if absent
+     */
+    public List<T> list(long key)
+    {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (keys[entry] == key)
+                return values[entry];
+        }
+        if (size == keys.length) {
+            grow();
+            return list(key);
+        }
+        List<T> list = new ArrayList<>(2);
+        keys[size] = key;
+        values[size] = list;
+        table[slot] = ++size;
+        return list;
+    }
+
+    private void grow()
+    {
+        keys = Arrays.copyOf(keys, keys.length * 2);
+        values = Arrays.copyOf(values, values.length * 2);
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = hash(keys[entry]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry + 1;
+        }
+    }
+
+    private static int hash(long key)
+    {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
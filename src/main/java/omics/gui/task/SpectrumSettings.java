@@ -0,0 +1,32 @@
+package omics.gui.task;
+
+import omics.pdk.ident.SearchParameters;
+
+/**
+ * The subset of {@link SearchParameters} used by <code>MsAccessor</code> to filter and preprocess spectra, searches
+ * with the same settings can share the spectra read from a file.
+ *
+ * @version 1.0.0
+ */
+public final class SpectrumSettings
+{
+    private SpectrumSettings() { }
+
+    /**
+     * Return the key of the spectrum settings, parameters with equal keys give the same preprocessed spectra.
+     *
+     * @param parameters {@link SearchParameters}
+     * @return key of the spectrum settings.
+     */
+    public static String key(SearchParameters parameters)
+    {
+        return "charge=" + parameters.getMinCharge() + "-" + parameters.getMaxCharge()
+                + "|minPeaks=" + parameters.getMinNumberPeaksPerSpectrum()
+                + "|removeOxonium=" + parameters.isRemoveOxonium()
+                + "|removeGlycoPeptideIon=" + parameters.isRemoveGlycoPeptideIon()
+                + "|instrument=" + parameters.getInstrument()
+                + "|dissociation=" + parameters.getDissociation()
+                + "|protocol=" + parameters.getProtocol()
+                + "|fragmentTolerance=" + parameters.getFragmentTolerance();
+    }
+}
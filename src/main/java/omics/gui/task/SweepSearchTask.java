@@ -0,0 +1,369 @@
+package omics.gui.task;
+
+import omics.pdk.ident.SearchParameters;
+import omics.pdk.ident.model.Score;
+import omics.pdk.util.ThreadPoolExecutorWithProgress;
+import omics.util.io.FilenameUtils;
+import omics.util.utils.SystemUtils;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Search the same MS files with several parameter files, such as to tune the tolerances or the delta list.
+ * <p>
+ * The variants run at the same time as {@link FXSearchTask}s on one shared executor, each writes its results in
+ * {@link BinaryResult} format to a directory named by its parameter file. Variants with the same
+ * {@link SpectrumSettings} read each MS file once, and variants with the same database, protease and decoy setting
+ * share one database through the {@link DatabaseRegistry}. Once all variants finished, the identifications of each
+ * variant are written to {@link #SUMMARY_FILE}.
+ *
+ * @version 1.0.0
+ */
+public class SweepSearchTask extends ReportingTask<Void>
+{
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(SweepSearchTask.class);
+
+    /**
+     * name of the summary table, written to the output directory.
+     */
+    public static final String SUMMARY_FILE = "sweep_summary.tsv";
+
+    private final List<String> parameterFiles;
+    private final int taskUnit;
+    private int nrThread;
+    private final List<String> msFiles;
+    private Path outputDirectory;
+    private double fdr = 0.01;
+
+    private final Map<String, Double> progressMap = new LinkedHashMap<>();
+    private final List<Summary> summaryList = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param parameterFiles search parameter file of each variant
+     * @param taskUnit       number of spectra per chunk, -1 for default
+     * @param nrThread       number of threads shared by all variants, 0 for all cores
+     * @param msFiles        MS files to search
+     */
+    public SweepSearchTask(List<String> parameterFiles, int taskUnit, int nrThread, List<String> msFiles)
+    {
+        this.parameterFiles = parameterFiles;
+        this.taskUnit = taskUnit;
+        this.nrThread = nrThread;
+        this.msFiles = msFiles;
+    }
+
+    /**
+     * Set the directory of the variant results and the summary, by default <code>sweep</code> next to the first MS
+     * file.
+     *
+     * @param outputDirectory output directory
+     */
+    public void setOutputDirectory(Path outputDirectory)
+    {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * @param fdr PSM level false discovery rate of the identifications counted in the summary, default 0.01.
+     */
+    public void setFdr(double fdr)
+    {
+        this.fdr = fdr;
+    }
+
+    /**
+     * @return identifications of each variant, available once the task finished.
+     */
+    public List<Summary> getSummaryList()
+    {
+        return summaryList;
+    }
+
+    @Override
+    protected Void call() throws Exception
+    {
+        if (parameterFiles.isEmpty())
+            throw new IllegalArgumentException("No parameter file");
+        if (msFiles.isEmpty())
+            throw new IllegalArgumentException("No MS file");
+        updateTitle("Parameter sweep");
+        int coreCount = SystemUtils.getProcessorCount();
+        if (nrThread <= 0 || nrThread > coreCount)
+            nrThread = coreCount;
+        Path outDir = outputDirectory != null ? outputDirectory
+                : Paths.get(msFiles.get(0)).toAbsolutePath().getParent().resolve("sweep");
+
+        // variants with the same spectrum settings share the spectra
+        Map<String, List<String>> settingsMap = new LinkedHashMap<>();
+        for (String parameterFile : parameterFiles) {
+            SearchParameters parameters = SearchParameters.getParameter(parameterFile);
+            settingsMap.computeIfAbsent(SpectrumSettings.key(parameters), key -> new ArrayList<>()).add(parameterFile);
+        }
+        logger.info("Sweep {} variants in {} spectrum settings", parameterFiles.size(), settingsMap.size());
+
+        Set<String> nameSet = new HashSet<>();
+        List<FXSearchTask> variantList = new ArrayList<>();
+        List<String> variantNames = new ArrayList<>();
+        List<String> variantParameters = new ArrayList<>();
+        List<Path> variantDirs = new ArrayList<>();
+        ThreadPoolExecutorWithProgress executor = ThreadPoolExecutorWithProgress.newFixedThreadPool(nrThread);
+        long heapBudget = AdmissionController.defaultHeapBudget() / parameterFiles.size();
+        for (List<String> group : settingsMap.values()) {
+            SharedSpectra sharedSpectra = new SharedSpectra(group.size());
+            for (String parameterFile : group) {
+                String name = FilenameUtils.removeExtension(Paths.get(parameterFile).getFileName().toString());
+                String uniqueName = name;
+                for (int i = 2; !nameSet.add(uniqueName); i++) {
+                    uniqueName = name + "_" + i;
+                }
+                Path dir = outDir.resolve(uniqueName);
+                FXSearchTask variant = new FXSearchTask(parameterFile, taskUnit, nrThread, msFiles);
+                variant.setOutputDirectory(dir);
+                variant.setSharedExecutor(executor);
+                variant.setSharedSpectra(sharedSpectra);
+                variant.setSearchHeapBudget(heapBudget);
+                variant.setBinaryResult(true);
+                variant.setReporter(new VariantReporter(uniqueName));
+                variantList.add(variant);
+                variantNames.add(uniqueName);
+                variantParameters.add(parameterFile);
+                variantDirs.add(dir);
+                progressMap.put(uniqueName, 0.0);
+            }
+        }
+
+        ExecutorService variantRunner = Executors.newFixedThreadPool(variantList.size());
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (FXSearchTask variant : variantList) {
+                futures.add(variantRunner.submit(() -> {
+                    variant.runHeadless();
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } catch (Exception e) {
+            for (FXSearchTask variant : variantList) {
+                variant.cancel(true);
+            }
+            throw e;
+        } finally {
+            variantRunner.shutdownNow();
+            executor.shutdownNow();
+        }
+
+        updateTitle("Summary");
+        updateProgress(-1, 1);
+        for (int i = 0; i < variantList.size(); i++) {
+            summaryList.add(summarize(variantNames.get(i), variantParameters.get(i), variantDirs.get(i)));
+        }
+        writeSummary(outDir.resolve(SUMMARY_FILE));
+        updateProgress(1, 1);
+        return null;
+    }
+
+    /**
+     * Count the identifications of a variant, the best target and decoy PSM of each spectrum compete by spectrum
+     * E-value, targets are counted up to the given FDR.
+     */
+    private Summary summarize(String name, String parameterFile, Path dir) throws IOException
+    {
+        Summary summary = new Summary(name, parameterFile);
+        for (String msFile : msFiles) {
+            String base = FilenameUtils.removeExtension(Paths.get(msFile).getFileName().toString());
+            Map<Integer, double[]> bestMap = new HashMap<>();
+            Map<Integer, String> peptideMap = new HashMap<>();
+            for (Path file : resultFiles(dir, base)) {
+                try (BinaryResult result = BinaryResult.open(file)) {
+                    int column = result.scoreColumn(Score.SPEC_EVALUE);
+                    if (column < 0)
+                        continue;
+                    for (int row = 0; row < result.size(); row++) {
+                        if (result.getRank(row) != 1)
+                            continue;
+                        double eValue = result.getScore(column, row);
+                        double[] best = bestMap.get(result.getIndex(row));
+                        if (best == null || eValue < best[0]) {
+                            bestMap.put(result.getIndex(row), new double[]{eValue, result.isTarget(row) ? 1 : 0});
+                            peptideMap.put(result.getIndex(row), result.getPeptide(row));
+                        }
+                    }
+                }
+            }
+            summary.spectrumCount += bestMap.size();
+
+            List<Map.Entry<Integer, double[]>> entryList = new ArrayList<>(bestMap.entrySet());
+            entryList.sort(Comparator.comparingDouble(entry -> entry.getValue()[0]));
+            int targets = 0;
+            int decoys = 0;
+            int accepted = 0;
+            for (int i = 0; i < entryList.size(); i++) {
+                if (entryList.get(i).getValue()[1] > 0)
+                    targets++;
+                else
+                    decoys++;
+                if (targets > 0 && (double) decoys / targets <= fdr)
+                    accepted = i + 1;
+            }
+            Set<String> peptideSet = new HashSet<>();
+            for (int i = 0; i < accepted; i++) {
+                Map.Entry<Integer, double[]> entry = entryList.get(i);
+                if (entry.getValue()[1] > 0) {
+                    summary.psmCount++;
+                    peptideSet.add(peptideMap.get(entry.getKey()));
+                }
+            }
+            summary.peptideCount += peptideSet.size();
+        }
+        return summary;
+    }
+
+    private void writeSummary(Path file) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("Variant\tParameter file\tSpectra\tPSMs\tPeptides");
+            writer.newLine();
+            for (Summary summary : summaryList) {
+                writer.write(summary.name + "\t" + summary.parameterFile + "\t" + summary.spectrumCount + "\t"
+                        + summary.psmCount + "\t" + summary.peptideCount);
+                writer.newLine();
+                logger.info("{}: {} PSMs, {} peptides at {} FDR", summary.name, summary.psmCount,
+                        summary.peptideCount, fdr);
+            }
+        }
+        updateMessage("Summary written to " + file);
+    }
+
+    private synchronized void variantProgress(String name, double progress)
+    {
+        progressMap.put(name, progress);
+        double sum = 0;
+        for (double value : progressMap.values()) {
+            sum += value;
+        }
+        updateProgress(sum, progressMap.size());
+    }
+
+    /**
+     * Return the binary results of a MS file in the directory of a variant, named by the base name of the MS file.
+     */
+    private static List<Path> resultFiles(Path dir, String base) throws IOException
+    {
+        List<Path> fileList = new ArrayList<>();
+        if (Files.notExists(dir))
+            return fileList;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, base + "*." + BinaryResult.EXTENSION)) {
+            for (Path path : stream) {
+                char next = path.getFileName().toString().charAt(base.length());
+                if (next == '.' || next == '_' || next == '-')
+                    fileList.add(path);
+            }
+        }
+        return fileList;
+    }
+
+    /**
+     * Identifications of a variant.
+     */
+    public static final class Summary
+    {
+        private final String name;
+        private final String parameterFile;
+        private int spectrumCount;
+        private int psmCount;
+        private int peptideCount;
+
+        Summary(String name, String parameterFile)
+        {
+            this.name = name;
+            this.parameterFile = parameterFile;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public String getParameterFile()
+        {
+            return parameterFile;
+        }
+
+        /**
+         * @return number of spectra having a rank 1 target or decoy PSM
+         */
+        public int getSpectrumCount()
+        {
+            return spectrumCount;
+        }
+
+        /**
+         * @return number of target PSMs at the FDR
+         */
+        public int getPsmCount()
+        {
+            return psmCount;
+        }
+
+        /**
+         * @return number of distinct peptides of the target PSMs at the FDR, summed over MS files
+         */
+        public int getPeptideCount()
+        {
+            return peptideCount;
+        }
+    }
+
+    /**
+     * Pass the updates of a variant to the sweep, with the messages prefixed by the variant name.
+     */
+    private class VariantReporter implements TaskReporter
+    {
+        private final String name;
+
+        VariantReporter(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public void onTitle(String title)
+        {
+            updateMessage(name + ": " + title);
+        }
+
+        @Override
+        public void onMessage(String message)
+        {
+            updateMessage(name + ": " + message);
+        }
+
+        @Override
+        public void onProgress(double progress)
+        {
+            if (progress >= 0)
+                variantProgress(name, progress);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package omics.gui.task;
+
+/**
+ * Receiver of the title, message and progress of a {@link ReportingTask} run without the JavaFX toolkit. The updates
+ * are coalesced by the {@link ProgressBus}, the methods are called on its thread, or on the task thread for titles.
+ *
+ * @version 1.0.0
+ */
+public interface TaskReporter
+{
+    /**
+     * @param title new title of the task
+     */
+    void onTitle(String title);
+
+    /**
+     * @param message new message of the task
+     */
+    void onMessage(String message);
+
+    /**
+     * @param progress progress in [0, 1], or -1 if it is indeterminate
+     */
+    void onProgress(double progress);
+
+    /**
+     * Called before {@link #onProgress(double)} once the throughput of current stage is known.
+     *
+     * @param throughput work done per second
+     * @param etaMillis  estimated milliseconds to finish current stage
+     */
+    default void onEstimate(double throughput, long etaMillis) { }
+}
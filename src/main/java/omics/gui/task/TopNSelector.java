@@ -0,0 +1,103 @@
+package omics.gui.task;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Select the values of the top-N scores of each spectrum as they arrive, without collecting and sorting all values of
+ * a spectrum.
+ * <p>
+ * Values with the same score share a rank, so a spectrum keeps all values of its N highest distinct scores. The list of
+ * each spectrum is ordered by score from high to low, values with the same score in the order they are offered.
+ *
+ * @version 1.0.0
+ */
+public class TopNSelector<T>
+{
+    private final int topN;
+    private final ToIntFunction<T> scoreFunc;
+    private final SpectrumKeyMap<T> map;
+
+    /**
+     * @param topN         number of distinct scores to keep for each spectrum
+     * @param scoreFunc    score of a value
+     * @param expectedSize expected number of spectra
+     */
+    public TopNSelector(int topN, ToIntFunction<T> scoreFunc, int expectedSize)
+    {
+        this.topN = topN;
+        this.scoreFunc = scoreFunc;
+        this.map = new SpectrumKeyMap<>(expectedSize);
+    }
+
+    /**
+     * Offer a value of a spectrum, it is dropped if its score is lower than the top-N scores of the spectrum.
+     *
+     * @param key   key of the spectrum, see {@link SpectrumKeyMap}
+     * @param value value to offer
+     */
+    public void offer(long key, T value)
+    {
+        if (topN <= 0)
+            return;
+        int score = scoreFunc.applyAsInt(value);
+        List<T> list = map.list(key);
+
+        int position = list.size();
+        int levels = 0;
+        int lastScore = 0;
+        for (int i = 0; i < list.size(); i++) {
+            int current = scoreFunc.applyAsInt(list.get(i));
+            if (i == 0 || current != lastScore) {
+                levels++;
+                lastScore = current;
+            }
+            if (current < score) {
+                position = i;
+                break;
+            }
+        }
+        if (position == list.size() && levels == topN && score != lastScore)
+            return;
+        list.add(position, value);
+
+        // drop the values beyond the top-N scores
+        levels = 0;
+        for (int i = 0; i < list.size(); i++) {
+            int current = scoreFunc.applyAsInt(list.get(i));
+            if (i == 0 || current != lastScore) {
+                if (++levels > topN) {
+                    list.subList(i, list.size()).clear();
+                    break;
+                }
+                lastScore = current;
+            }
+        }
+    }
+
+    /**
+     * @return number of spectra
+     */
+    public int size()
+    {
+        return map.size();
+    }
+
+    /**
+     * @param i index of the spectrum, in the order the spectra are first offered
+     * @return key of the spectrum
+     */
+    public long keyAt(int i)
+    {
+        return map.keyAt(i);
+    }
+
+    /**
+     * @param i index of the spectrum, in the order the spectra are first offered
+     * @return selected values of the spectrum, ordered by score from high to low
+     */
+    public List<T> valueAt(int i)
+    {
+        return map.valueAt(i);
+    }
+}
@@ -1,6 +1,7 @@
 package omics.gui.util;
 
 import javafx.stage.FileChooser;
+import omics.gui.task.BinaryResult;
 import omics.pdk.io.ResultFileType;
 
 import java.util.ArrayList;
@@ -17,6 +18,7 @@ public class IdentFileUIUtils
     {
         List<FileChooser.ExtensionFilter> filterList = new ArrayList<>();
         filterList.add(new FileChooser.ExtensionFilter("All", "*.*"));
+        filterList.add(new FileChooser.ExtensionFilter(BinaryResult.NAME, "*." + BinaryResult.EXTENSION));
         filterList.add(new FileChooser.ExtensionFilter(ResultFileType.MzIdentML.getName(), ResultFileType.MzIdentML.getExtension()));
         filterList.add(new FileChooser.ExtensionFilter(ResultFileType.MASCOT_CSV.getName(), ResultFileType.MASCOT_CSV.getExtension()));
         filterList.add(new FileChooser.ExtensionFilter(ResultFileType.MASCOT_DAT.getName(), ResultFileType.MASCOT_DAT.getExtension()));
@@ -0,0 +1,58 @@
+package omics.gui.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @version 1.0.0
+ */
+class AdmissionControllerTest
+{
+    @Test
+    void holdUntilRelease() throws Exception
+    {
+        List<String> decisionList = new ArrayList<>();
+        AdmissionController controller = new AdmissionController(10 * 1024, 2, decisionList::add);
+        assertEquals("sample", controller.calibrate(1, () -> "sample"));
+        assertTrue(controller.isCalibrated());
+
+        // the permits of the whole budget are held by the result
+        List<Integer> held = new ArrayList<>();
+        assertEquals("a", controller.run(1e9, () -> "a", held));
+        assertEquals(1, held.size());
+        assertTrue(held.get(0) > 0);
+
+        // nothing is running, so the next chunk does not wait for the held permits
+        List<Integer> overHeld = new ArrayList<>();
+        assertEquals("b", controller.run(1e9, () -> "b", overHeld));
+        assertEquals(0, (int) overHeld.get(0));
+        assertEquals(1, decisionList.size());
+
+        controller.release(held);
+        controller.release(overHeld);
+        assertTrue(held.isEmpty());
+        assertEquals("c", controller.run(1e9, () -> "c", held));
+        assertEquals(1, decisionList.size());
+    }
+
+    @Test
+    void releaseOnFailure() throws Exception
+    {
+        AdmissionController controller = new AdmissionController(10 * 1024, 2, decision -> { });
+        controller.calibrate(1, () -> null);
+
+        List<Integer> held = new ArrayList<>();
+        assertThrows(IllegalStateException.class, () -> controller.run(1e9, () -> {
+            throw new IllegalStateException();
+        }, held));
+        assertTrue(held.isEmpty());
+        // the permits of the failed chunk are back
+        assertEquals("a", controller.run(1e9, () -> "a", held));
+        assertEquals(1, held.size());
+        assertTrue(held.get(0) > 0);
+    }
+}
@@ -0,0 +1,112 @@
+package omics.gui.task;
+
+import omics.pdk.IdentResult;
+import omics.pdk.ident.model.*;
+import omics.util.ms.MsDataId;
+import omics.util.ms.ScanNumberDiscrete;
+import omics.util.protein.Peptide;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @version 1.0.0
+ */
+class BinaryResultTest
+{
+    @Test
+    void pathOf()
+    {
+        assertEquals(Paths.get("out", "a.target.omr"), BinaryResult.pathOf(Paths.get("out", "a.target.mzid")));
+        assertEquals(Paths.get("a.omr"), BinaryResult.pathOf(Paths.get("a")));
+    }
+
+    @Test
+    void isBinary() throws Exception
+    {
+        Path file = Files.createTempFile("omics", ".mzid");
+        try {
+            Files.write(file, "<?xml version=\"1.0\"?>".getBytes());
+            assertFalse(BinaryResult.isBinary(file));
+            assertFalse(BinaryResult.isBinary(file.resolveSibling("missing.omr")));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void roundTrip(@TempDir Path dir) throws Exception
+    {
+        MsDataId msDataId = new MsDataId("light", "light.mgf");
+        ProteinMatch protein1 = new ProteinMatch("sp|P1|PROT1");
+        ProteinMatch protein2 = new ProteinMatch("DECOY_sp|P2|PROT2");
+        IdentResult result = new IdentResult("Identification Result");
+        String[] peptides = {"PEPTIDE", "SAMPLER", "PEPTIDE"};
+        for (int i = 0; i < peptides.length; i++) {
+            PeptideSpectrumMatch psm = new PeptideSpectrumMatch(Peptide.parse(peptides[i]));
+            psm.setMsDataId(msDataId);
+            psm.getIdentifier().setIndex(i);
+            psm.getIdentifier().setTitle("spectrum " + i);
+            psm.getIdentifier().addScanNumber(new ScanNumberDiscrete(100 + i));
+            psm.setPrecursorCharge(2 + i % 2);
+            psm.setPrecursorMz(400.25 + i);
+            psm.setRank(1);
+            psm.setHitType(i == 1 ? HitType.DECOY : HitType.TARGET);
+            Set<PeptideProteinMatch> proteinSet = new HashSet<>();
+            proteinSet.add(new PeptideProteinMatch(i == 1 ? protein2 : protein1));
+            psm.getPeptideMatch().setPeptideProteinMatches(proteinSet);
+            psm.addScore(Score.PSM_E_VALUE, 1e-3 * (i + 1));
+            result.add(psm);
+        }
+
+        Path file = dir.resolve("result." + BinaryResult.EXTENSION);
+        BinaryResult.write(result, null, file);
+        assertTrue(BinaryResult.isBinary(file));
+
+        IdentResult binary;
+        IdentResult filtered;
+        try (BinaryResult reader = BinaryResult.open(file)) {
+            assertEquals(result.size(), reader.size());
+            binary = reader.toIdentResult();
+            filtered = reader.toIdentResult(row -> row != 1);
+        }
+        assertEquals(result.size(), binary.size());
+        for (int i = 0; i < result.size(); i++) {
+            PeptideSpectrumMatch expected = result.get(i);
+            PeptideSpectrumMatch actual = binary.get(i);
+            assertEquals(expected.getPeptide().toString(), actual.getPeptide().toString());
+            assertEquals(msDataId.getId(), actual.getMsDataId().getId());
+            assertEquals(msDataId.getName(), actual.getMsDataId().getName());
+            assertEquals(i, actual.getIdentifier().getIndex());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getScanNumber().getValue(), actual.getScanNumber().getValue());
+            assertEquals(expected.getPrecursorCharge(), actual.getPrecursorCharge());
+            assertEquals(expected.getPrecursorMz(), actual.getPrecursorMz());
+            assertEquals(expected.getRank(), actual.getRank());
+            assertEquals(expected.isTarget(), actual.isTarget());
+            assertEquals(accessions(expected), accessions(actual));
+            assertEquals(((Number) expected.getScore(Score.PSM_E_VALUE)).doubleValue(),
+                    ((Number) actual.getScore(Score.PSM_E_VALUE)).doubleValue());
+        }
+
+        assertEquals(2, filtered.size());
+        assertEquals("spectrum 0", filtered.get(0).getTitle());
+        assertEquals("spectrum 2", filtered.get(1).getTitle());
+    }
+
+    private static Set<String> accessions(PeptideSpectrumMatch psm)
+    {
+        Set<String> accessionSet = new HashSet<>();
+        for (PeptideProteinMatch match : psm.getPeptideMatch().getPeptideProteinMatches()) {
+            accessionSet.add(match.getProteinMatch().getAccession());
+        }
+        return accessionSet;
+    }
+}
@@ -0,0 +1,50 @@
+package omics.gui.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @version 1.0.0
+ */
+class ChunkPlannerTest
+{
+    @Test
+    void plan()
+    {
+        double[] costs = new double[10_000];
+        Arrays.fill(costs, 1.0);
+        // a block of expensive spectra
+        Arrays.fill(costs, 2000, 2500, 10.0);
+
+        List<SearchChunk> chunkList = ChunkPlanner.plan(costs, 500, 8);
+        assertEquals(0, chunkList.get(0).getStartIndex());
+        assertEquals(costs.length, chunkList.get(chunkList.size() - 1).getEndIndex());
+        for (int i = 1; i < chunkList.size(); i++) {
+            assertEquals(chunkList.get(i - 1).getEndIndex(), chunkList.get(i).getStartIndex());
+        }
+
+        double unitCost = 14500.0 * 500 / costs.length;
+        for (SearchChunk chunk : chunkList) {
+            assertTrue(chunk.size() <= 1000);
+            assertTrue(chunk.getCost() <= unitCost + 10.0);
+        }
+        // chunks become smaller towards the end
+        assertTrue(chunkList.get(chunkList.size() - 1).getCost() < chunkList.get(0).getCost());
+    }
+
+    @Test
+    void planSmall()
+    {
+        double[] costs = new double[100];
+        Arrays.fill(costs, 1.0);
+        List<SearchChunk> chunkList = ChunkPlanner.plan(costs, 500, 8);
+        assertEquals(1, chunkList.size());
+        assertEquals(100, chunkList.get(0).size());
+
+        assertTrue(ChunkPlanner.plan(new double[0], 500, 8).isEmpty());
+    }
+}
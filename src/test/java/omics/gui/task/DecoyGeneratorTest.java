@@ -0,0 +1,64 @@
+package omics.gui.task;
+
+import omics.util.protein.database.util.DoShuffleDB;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @version 1.0.0
+ */
+class DecoyGeneratorTest
+{
+    @Test
+    void go(@TempDir Path dir) throws Exception
+    {
+        Path input = Paths.get(getClass().getResource("/proteins.fasta").toURI());
+        Path expected = dir.resolve("expected.fasta");
+        Path actual = dir.resolve("actual.fasta");
+        new DoShuffleDB(input, expected, DoShuffleDB.DecoyType.REVERSE, false, DoShuffleDB.DECOY_PROTEIN_PREFIX,
+                DoShuffleDB.TagPos.BEFORE_ACC).go();
+
+        List<Double> progressList = new ArrayList<>();
+        DecoyGenerator generator = new DecoyGenerator(input, actual, DecoyGenerator.Type.REVERSE,
+                DoShuffleDB.DECOY_PROTEIN_PREFIX);
+        generator.setThreadCount(2);
+        generator.setProgressListener(progressList::add);
+        generator.go();
+
+        assertEquals(headers(expected), headers(actual));
+        assertEquals(sequences(expected), sequences(actual));
+        assertEquals(1.0, progressList.get(progressList.size() - 1));
+    }
+
+    private static List<String> headers(Path file) throws Exception
+    {
+        return Files.readAllLines(file).stream().filter(line -> line.startsWith(">")).collect(Collectors.toList());
+    }
+
+    private static List<String> sequences(Path file) throws Exception
+    {
+        List<String> sequenceList = new ArrayList<>();
+        StringBuilder builder = null;
+        for (String line : Files.readAllLines(file)) {
+            if (line.startsWith(">")) {
+                if (builder != null)
+                    sequenceList.add(builder.toString());
+                builder = new StringBuilder();
+            } else if (builder != null) {
+                builder.append(line.trim());
+            }
+        }
+        if (builder != null)
+            sequenceList.add(builder.toString());
+        return sequenceList;
+    }
+}
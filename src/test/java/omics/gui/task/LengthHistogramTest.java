@@ -0,0 +1,43 @@
+package omics.gui.task;
+
+import omics.util.protein.database.FastaSequence;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Compare the parallel length histogram with the per-length loop, on the <code>proteins.fasta</code> fixture or the
+ * proteome set with the <code>omics.bench.fasta</code> system property.
+ *
+ * @version 1.0.0
+ */
+class LengthHistogramTest
+{
+    @Test
+    void compute(@TempDir Path dir) throws Exception
+    {
+        String fasta = System.getProperty("omics.bench.fasta");
+        Path path;
+        if (fasta != null) {
+            path = Paths.get(fasta);
+        } else {
+            // the index files of the sequence are created next to the fasta
+            path = dir.resolve("proteins.fasta");
+            Files.copy(Paths.get(getClass().getResource("/proteins.fasta").toURI()), path);
+        }
+
+        FastaSequence sequence = new FastaSequence(path.toString());
+        for (boolean unspecific : new boolean[]{false, true}) {
+            int[] expected = LengthHistogram.computeSequential(sequence, unspecific);
+            for (int nrThread : new int[]{1, 2, 4}) {
+                assertArrayEquals(expected, LengthHistogram.compute(sequence, unspecific, nrThread));
+            }
+        }
+        sequence.clear();
+    }
+}
@@ -0,0 +1,92 @@
+package omics.gui.task;
+
+import omics.msdk.model.MsDataFile;
+import omics.pdk.IdentResult;
+import omics.pdk.ident.model.PeptideSpectrumMatch;
+import omics.util.ms.MsDataId;
+import omics.util.ms.MsnSpectrum;
+import omics.util.ms.ScanNumberDiscrete;
+import omics.util.protein.Peptide;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @version 1.0.0
+ */
+class MassOrderTest
+{
+    @Test
+    void order()
+    {
+        double[] masses = {1500.2, 800.4, 2200.9, 800.4, 1200.0};
+        assertArrayEquals(new int[]{1, 3, 4, 0, 2}, MassOrder.order(masses));
+        assertArrayEquals(new int[0], MassOrder.order(new double[0]));
+    }
+
+    @Test
+    void restore(@TempDir Path dir) throws Exception
+    {
+        Path mgf = dir.resolve("mass_order.mgf");
+        Files.copy(Paths.get(getClass().getResource("/mass_order.mgf").toURI()), mgf);
+        List<Integer> scanList = scans(MsDataFile.read(mgf.toString()).getSpectrumList());
+
+        MassOrder order = MassOrder.write(mgf, dir);
+        List<MsnSpectrum> orderedList = MsDataFile.read(order.getFile().toString()).getSpectrumList();
+        assertEquals(scanList.size(), orderedList.size());
+        for (int i = 1; i < orderedList.size(); i++) {
+            assertTrue(orderedList.get(i - 1).getPrecursor().getMass() <= orderedList.get(i).getPrecursor().getMass());
+        }
+        assertNotEquals(scanList, scans(orderedList));
+
+        // PSMs of the ordered copy are mapped back to the spectra of the original file
+        MsDataId copyId = new MsDataId("mass_order", order.getFile().toString());
+        IdentResult result = new IdentResult("Identification Result");
+        for (int i = 0; i < orderedList.size(); i++) {
+            MsnSpectrum spectrum = orderedList.get(i);
+            PeptideSpectrumMatch psm = new PeptideSpectrumMatch(Peptide.parse("PEPTIDE"));
+            psm.setMsDataId(copyId);
+            psm.getIdentifier().setIndex(i);
+            psm.getIdentifier().addScanNumber(new ScanNumberDiscrete(spectrum.getScanNumber().getValue()));
+            result.add(psm);
+        }
+        order.restore(result);
+        List<Integer> restoredList = new ArrayList<>();
+        List<PeptideSpectrumMatch> psmList = result.getPSMList();
+        for (int i = 0; i < psmList.size(); i++) {
+            PeptideSpectrumMatch psm = psmList.get(i);
+            assertEquals(i, psm.getIdentifier().getIndex());
+            assertEquals(mgf.toAbsolutePath().toString(), psm.getMsDataId().getName());
+            assertEquals("mass_order", psm.getMsDataId().getId());
+            restoredList.add(psm.getScanNumber().getValue());
+        }
+        assertEquals(scanList, restoredList);
+
+        order.delete();
+        assertFalse(Files.exists(order.getFile()));
+    }
+
+    @Test
+    void rejectNonMgf(@TempDir Path dir)
+    {
+        assertTrue(MassOrder.isSupported(Paths.get("a.MGF")));
+        assertFalse(MassOrder.isSupported(Paths.get("a.mzML")));
+        assertThrows(IllegalArgumentException.class, () -> MassOrder.write(dir.resolve("a.mzML"), dir));
+    }
+
+    private static List<Integer> scans(List<MsnSpectrum> spectrumList)
+    {
+        List<Integer> scanList = new ArrayList<>();
+        for (MsnSpectrum spectrum : spectrumList) {
+            scanList.add(spectrum.getScanNumber().getValue());
+        }
+        return scanList;
+    }
+}
@@ -0,0 +1,73 @@
+package omics.gui.task;
+
+import omics.pdk.ident.model.Score;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @version 1.0.0
+ */
+class MzIdentFilterTest
+{
+    private static final String MZID = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<MzIdentML xmlns=\"http://psidev.info/psi/pi/mzIdentML/1.1\" id=\"test\" version=\"1.1.0\">\n"
+            + "<SequenceCollection>\n"
+            + "<DBSequence id=\"DB1\" accession=\"P1\"/>\n"
+            + "<DBSequence id=\"DB2\" accession=\"P2\"/>\n"
+            + "<Peptide id=\"PEP1\"><PeptideSequence>PEPTIDE</PeptideSequence></Peptide>\n"
+            + "<Peptide id=\"PEP2\"><PeptideSequence>PEPTIDER</PeptideSequence></Peptide>\n"
+            + "<PeptideEvidence id=\"PE1\" peptide_ref=\"PEP1\" dBSequence_ref=\"DB1\"/>\n"
+            + "<PeptideEvidence id=\"PE2\" peptide_ref=\"PEP2\" dBSequence_ref=\"DB2\"/>\n"
+            + "</SequenceCollection>\n"
+            + "<DataCollection><AnalysisData><SpectrumIdentificationList id=\"SIL\">\n"
+            + "<SpectrumIdentificationResult id=\"SIR1\" spectrumID=\"index=0\">\n"
+            + "<SpectrumIdentificationItem id=\"SII1\" rank=\"1\" peptide_ref=\"PEP1\">"
+            + "<PeptideEvidenceRef peptideEvidence_ref=\"PE1\"/>"
+            + "<userParam name=\"RANK_SCORE\" value=\"30\"/></SpectrumIdentificationItem>\n"
+            + "<SpectrumIdentificationItem id=\"SII2\" rank=\"2\" peptide_ref=\"PEP2\">"
+            + "<PeptideEvidenceRef peptideEvidence_ref=\"PE2\"/>"
+            + "<userParam name=\"RANK_SCORE\" value=\"10\"/></SpectrumIdentificationItem>\n"
+            + "</SpectrumIdentificationResult>\n"
+            + "<SpectrumIdentificationResult id=\"SIR2\" spectrumID=\"index=1\">\n"
+            + "<SpectrumIdentificationItem id=\"SII3\" rank=\"1\" peptide_ref=\"PEP2\">"
+            + "<PeptideEvidenceRef peptideEvidence_ref=\"PE2\"/>"
+            + "<userParam name=\"RANK_SCORE\" value=\"5\"/></SpectrumIdentificationItem>\n"
+            + "</SpectrumIdentificationResult>\n"
+            + "</SpectrumIdentificationList></AnalysisData></DataCollection>\n"
+            + "</MzIdentML>\n";
+
+    @Test
+    void filter(@TempDir Path dir) throws Exception
+    {
+        Path source = dir.resolve("a.mzid");
+        Path target = dir.resolve("a_filtered.mzid");
+        Files.write(source, MZID.getBytes(StandardCharsets.UTF_8));
+        assertTrue(MzIdentFilter.isMzIdentML(source));
+
+        MzIdentFilter filter = new MzIdentFilter().atLeast(Score.RANK_SCORE, 20);
+        assertTrue(filter.filter(source, target));
+        assertEquals(3, filter.getItemCount());
+        assertEquals(1, filter.getKeptCount());
+
+        String text = new String(Files.readAllBytes(target), StandardCharsets.UTF_8);
+        assertTrue(text.contains("SII1"));
+        assertFalse(text.contains("SII2"));
+        assertFalse(text.contains("SIR2"));
+        assertTrue(text.contains("\"DB1\""));
+        assertFalse(text.contains("\"DB2\""));
+        assertFalse(text.contains("\"PEP2\""));
+
+        // nothing to drop
+        assertFalse(new MzIdentFilter().atLeast(Score.RANK_SCORE, 0).filter(source, target));
+        // 2 of 3 items pass, more than the ratio worth a copy
+        MzIdentFilter keepMost = new MzIdentFilter().atLeast(Score.RANK_SCORE, 8).keepAtMost(0.5);
+        assertFalse(keepMost.filter(source, target));
+        assertEquals(2, keepMost.getKeptCount());
+    }
+}
@@ -0,0 +1,95 @@
+package omics.gui.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test of {@link SameSetSelector}, it keeps the same proteins as the pairwise comparison of peptide sets.
+ *
+ * @version 1.0.0
+ */
+class SameSetSelectorTest
+{
+    private static final Map<String, List<String>> PEPTIDE_MAP = new HashMap<>();
+
+    static {
+        PEPTIDE_MAP.put("sp|B", Arrays.asList("K", "R"));
+        PEPTIDE_MAP.put("tr|A", Arrays.asList("R", "K", "R"));
+        PEPTIDE_MAP.put("sp|C", Arrays.asList("K"));
+        PEPTIDE_MAP.put("tr|D", Arrays.asList("K"));
+        PEPTIDE_MAP.put("sp|A", Arrays.asList("R", "K"));
+    }
+
+    @Test
+    void select()
+    {
+        // reviewed first, then by accession
+        Comparator<String> comparator = Comparator.comparing((String protein) -> !protein.startsWith("sp"))
+                .thenComparing(Comparator.naturalOrder());
+        SameSetSelector<String, String> selector = new SameSetSelector<>(PEPTIDE_MAP::get, comparator);
+        assertEquals(Arrays.asList("sp|A", "sp|C"), selector.select(Arrays.asList("sp|B", "tr|A", "sp|C", "tr|D",
+                "sp|A")));
+    }
+
+    @Test
+    void selectLikeNestedLoop()
+    {
+        int proteinCount = 2000;
+        int setCount = 60;
+        Random random = new Random(42);
+        List<List<Integer>> setList = new ArrayList<>();
+        for (int i = 0; i < setCount; i++) {
+            List<Integer> peptides = new ArrayList<>();
+            int size = 1 + random.nextInt(8);
+            for (int j = 0; j < size; j++) {
+                peptides.add(random.nextInt(40));
+            }
+            setList.add(peptides);
+        }
+        Map<String, List<Integer>> peptideMap = new HashMap<>();
+        List<String> proteinList = new ArrayList<>();
+        for (int i = 0; i < proteinCount; i++) {
+            List<Integer> peptides = new ArrayList<>(setList.get(random.nextInt(setCount)));
+            Collections.shuffle(peptides, random);
+            String protein = (random.nextBoolean() ? "sp|" : "tr|") + random.nextInt(proteinCount * 4);
+            if (peptideMap.putIfAbsent(protein, peptides) == null)
+                proteinList.add(protein);
+        }
+        Comparator<String> comparator = Comparator.comparing((String protein) -> !protein.startsWith("sp"))
+                .thenComparing(Comparator.naturalOrder());
+
+        List<String> keptList = new SameSetSelector<>(peptideMap::get, comparator).select(proteinList);
+        assertEquals(nestedLoop(proteinList, peptideMap, comparator), new HashSet<>(keptList));
+        assertEquals(keptList.size(), new HashSet<>(keptList).size());
+    }
+
+    /**
+     * The pairwise comparison of peptide sets which {@link SameSetSelector} replaces.
+     */
+    private static Set<String> nestedLoop(List<String> proteinList, Map<String, List<Integer>> peptideMap,
+            Comparator<String> comparator)
+    {
+        Set<String> retainedSet = new HashSet<>();
+        retainedSet.add(proteinList.get(0));
+        for (int i = 1; i < proteinList.size(); i++) {
+            String protein = proteinList.get(i);
+            String equal = null;
+            for (String retained : retainedSet) {
+                if (new HashSet<>(peptideMap.get(retained)).equals(new HashSet<>(peptideMap.get(protein)))) {
+                    equal = retained;
+                    break;
+                }
+            }
+            if (equal == null) {
+                retainedSet.add(protein);
+            } else if (comparator.compare(equal, protein) > 0) {
+                retainedSet.remove(equal);
+                retainedSet.add(protein);
+            }
+        }
+        return retainedSet;
+    }
+}
@@ -0,0 +1,39 @@
+package omics.gui.task;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @version 1.0.0
+ */
+class SearchMetricsTest
+{
+    @Test
+    void register() throws Exception
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        SearchMetrics first = new SearchMetrics("a.mgf", 10);
+        SearchMetrics second = new SearchMetrics("a.mgf", 20);
+        first.register();
+        second.register();
+        ObjectName firstName = first.getObjectName();
+        ObjectName secondName = second.getObjectName();
+        assertNotEquals(firstName, secondName);
+
+        // files searched at the same time are registered side by side
+        assertEquals(10L, server.getAttribute(firstName, "DatabaseInitMillis"));
+        assertEquals(20L, server.getAttribute(secondName, "DatabaseInitMillis"));
+        assertEquals("a.mgf", server.getAttribute(firstName, "FileName"));
+
+        first.close();
+        second.close();
+        assertFalse(server.isRegistered(firstName));
+        assertFalse(server.isRegistered(secondName));
+        assertNull(first.getObjectName());
+    }
+}
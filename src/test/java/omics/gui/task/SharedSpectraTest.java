@@ -0,0 +1,41 @@
+package omics.gui.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @version 1.0.0
+ */
+class SharedSpectraTest
+{
+    @Test
+    void take() throws Exception
+    {
+        SharedSpectra sharedSpectra = new SharedSpectra(2);
+        Path file = Paths.get("a.mgf");
+        AtomicInteger readCount = new AtomicInteger();
+
+        assertNull(sharedSpectra.take(file, () -> {
+            readCount.incrementAndGet();
+            return null;
+        }));
+        assertNull(sharedSpectra.take(file, () -> {
+            readCount.incrementAndGet();
+            return null;
+        }));
+        assertEquals(1, readCount.get());
+
+        // all users took the file, a new round reads it again
+        sharedSpectra.take(file, () -> {
+            readCount.incrementAndGet();
+            return null;
+        });
+        assertEquals(2, readCount.get());
+    }
+}
@@ -0,0 +1,71 @@
+package omics.gui.task;
+
+import omics.msdk.model.MsDataFile;
+import omics.util.ms.MsnSpectrum;
+import omics.util.ms.RetentionTime;
+import omics.util.ms.RetentionTimeDiscrete;
+import omics.util.ms.TimeUnit;
+import omics.util.ms.peaklist.Peak;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @version 1.0.0
+ */
+class SpectrumCacheTest
+{
+    @Test
+    void storeLoad(@TempDir Path dir) throws Exception
+    {
+        Path mgf = Paths.get(getClass().getResource("/light.mgf").toURI());
+        List<MsnSpectrum> spectrumList = MsDataFile.read(mgf.toString()).getSpectrumList();
+        assertFalse(spectrumList.isEmpty());
+        for (int i = 0; i < spectrumList.size(); i++) {
+            MsnSpectrum spectrum = spectrumList.get(i);
+            spectrum.setIndex(i);
+            // the retention time is cached in seconds
+            spectrum.addRetentionTime(new RetentionTimeDiscrete(12.5, TimeUnit.MINUTE));
+        }
+
+        SpectrumCache cache = new SpectrumCache(mgf, dir.resolve("light.mgf.spc"));
+        cache.write(spectrumList.size(), spectrumList::get);
+        MsnSpectrum[] spectra = cache.read();
+
+        assertEquals(spectrumList.size(), spectra.length);
+        for (int i = 0; i < spectra.length; i++) {
+            MsnSpectrum expected = spectrumList.get(i);
+            MsnSpectrum actual = spectra[i];
+            assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.getX(j), actual.getX(j));
+                assertEquals(expected.getY(j), actual.getY(j));
+            }
+
+            Peak expectedPrecursor = expected.getPrecursor();
+            Peak actualPrecursor = actual.getPrecursor();
+            assertEquals(expectedPrecursor.getMz(), actualPrecursor.getMz());
+            assertEquals(expectedPrecursor.getIntensity(), actualPrecursor.getIntensity());
+            assertArrayEquals(expectedPrecursor.getChargeList(), actualPrecursor.getChargeList());
+
+            assertEquals(expected.getMsLevel(), actual.getMsLevel());
+            assertEquals(expected.getScanNumber().getValue(), actual.getScanNumber().getValue());
+            assertEquals(expected.getScanNumbers().size(), actual.getScanNumbers().size());
+            assertEquals(i, actual.getIndex());
+            assertEquals(expected.getTitle(), actual.getTitle());
+
+            assertEquals(expected.getRetentionTimes().size(), actual.getRetentionTimes().size());
+            Iterator<RetentionTime> it = actual.getRetentionTimes().iterator();
+            for (RetentionTime retentionTime : expected.getRetentionTimes()) {
+                assertEquals(retentionTime.getTime(), it.next().getTime(), 1e-9);
+            }
+            assertEquals(750, actual.getRetentionTimes().getLast().getTime(), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package omics.gui.task;
+
+import com.google.common.collect.ArrayListMultimap;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test of {@link SpectrumKeyMap}, the packed keys group PSMs as the string keys they replace.
+ *
+ * @version 1.0.0
+ */
+class SpectrumKeyMapTest
+{
+    @Test
+    void key()
+    {
+        long key = SpectrumKeyMap.scanKey(3, 1024);
+        assertEquals(3, SpectrumKeyMap.file(key));
+        assertNotEquals(key, SpectrumKeyMap.indexKey(3, 1024));
+        assertEquals(SpectrumKeyMap.scanKey(7, 1024), SpectrumKeyMap.withFile(key, 7));
+        assertEquals(SpectrumKeyMap.indexKey(7, 5), SpectrumKeyMap.withFile(SpectrumKeyMap.indexKey(3, 5), 7));
+    }
+
+    @Test
+    void add()
+    {
+        SpectrumKeyMap<Integer> map = new SpectrumKeyMap<>(4);
+        for (int i = 0; i < 1000; i++) {
+            map.add(SpectrumKeyMap.scanKey(i % 3, i / 3), i);
+            map.add(SpectrumKeyMap.scanKey(i % 3, i / 3), -i);
+        }
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i++) {
+            // keys are iterated in the order they are added
+            assertEquals(SpectrumKeyMap.scanKey(i % 3, i / 3), map.keyAt(i));
+            assertEquals(Arrays.asList(i, -i), map.valueAt(i));
+        }
+        assertEquals(Arrays.asList(4, -4), map.get(SpectrumKeyMap.scanKey(1, 1)));
+        assertNull(map.get(SpectrumKeyMap.scanKey(3, 0)));
+    }
+
+    @Test
+    void roundTrip()
+    {
+        int[] files = {0, 1, 47, 65535, Integer.MAX_VALUE};
+        int[] values = {0, 1, 1024, Integer.MAX_VALUE};
+        Set<Long> keySet = new HashSet<>();
+        for (int file : files) {
+            for (int value : values) {
+                long scanKey = SpectrumKeyMap.scanKey(file, value);
+                long indexKey = SpectrumKeyMap.indexKey(file, value);
+                assertEquals(file, SpectrumKeyMap.file(scanKey));
+                assertEquals(file, SpectrumKeyMap.file(indexKey));
+                for (int other : files) {
+                    assertEquals(SpectrumKeyMap.scanKey(other, value), SpectrumKeyMap.withFile(scanKey, other));
+                    assertEquals(SpectrumKeyMap.indexKey(other, value), SpectrumKeyMap.withFile(indexKey, other));
+                }
+                assertTrue(keySet.add(scanKey));
+                assertTrue(keySet.add(indexKey));
+            }
+        }
+    }
+
+    @Test
+    void groupLikeStringKeys()
+    {
+        int fileCount = 48;
+        int psmCount = 20000;
+        ArrayListMultimap<String, Integer> psmMap = ArrayListMultimap.create();
+        SpectrumKeyMap<Integer> keyMap = new SpectrumKeyMap<>();
+        List<String> stringKeyList = new ArrayList<>();
+        for (int i = 0; i < psmCount; i++) {
+            int file = i % fileCount;
+            int scan = i / fileCount / 2;
+            String stringKey = "file" + file + "_" + scan;
+            if (!psmMap.containsKey(stringKey))
+                stringKeyList.add(stringKey);
+            psmMap.put(stringKey, i);
+            keyMap.add(SpectrumKeyMap.scanKey(file, scan), i);
+        }
+
+        assertEquals(stringKeyList.size(), keyMap.size());
+        for (int i = 0; i < keyMap.size(); i++) {
+            long key = keyMap.keyAt(i);
+            String stringKey = stringKeyList.get(i);
+            assertEquals(stringKey, "file" + SpectrumKeyMap.file(key) + "_" + (key & 0xFFFFFFFFL));
+            assertEquals(psmMap.get(stringKey), keyMap.valueAt(i));
+        }
+    }
+}
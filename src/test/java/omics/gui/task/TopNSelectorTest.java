@@ -0,0 +1,37 @@
+package omics.gui.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @version 1.0.0
+ */
+class TopNSelectorTest
+{
+    @Test
+    void offer()
+    {
+        // values are scored by the tens digit
+        TopNSelector<Integer> selector = new TopNSelector<>(2, value -> value / 10, 4);
+        long key = SpectrumKeyMap.scanKey(0, 1);
+        for (int value : new int[]{30, 10, 31, 50, 20, 51, 32}) {
+            selector.offer(key, value);
+        }
+        assertEquals(1, selector.size());
+        assertEquals(Arrays.asList(50, 51, 30, 31, 32), selector.valueAt(0));
+
+        TopNSelector<Integer> top1 = new TopNSelector<>(1, value -> value / 10, 4);
+        top1.offer(key, 20);
+        top1.offer(SpectrumKeyMap.scanKey(0, 2), 5);
+        top1.offer(key, 21);
+        top1.offer(key, 10);
+        top1.offer(key, 30);
+        assertEquals(2, top1.size());
+        assertEquals(Collections.singletonList(30), top1.valueAt(0));
+        assertEquals(Collections.singletonList(5), top1.valueAt(1));
+    }
+}